@@ -0,0 +1,88 @@
+package benchmarks;
+
+import backend.models.Food;
+import backend.models.FoodComponent;
+import backend.services.FoodDatabaseService;
+import backend.services.FoodLogService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Synthetic, seeded datasets for the benchmarks, built through the public service API
+// in a private temp directory so benchmark runs never touch real data files.
+final class BenchmarkData {
+    static final long SEED = 42;
+    static final LocalDate FIRST_DAY = LocalDate.of(2022, 1, 1);
+    static final int DAYS = 3 * 365;
+    static final String[] MEAL_TYPES = {"Breakfast", "Lunch", "Dinner", "Snack", "Other"};
+
+    private static final int KEYWORDS = 500;
+    private static final int COMPOSITE_PERCENT = 10;
+
+    private BenchmarkData() {
+    }
+
+    static File newDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.isDirectory()) {
+                    deleteDirectory(file);
+                } else {
+                    file.delete();
+                }
+            }
+        }
+        directory.delete();
+    }
+
+    // Skewed towards low keyword numbers so a few keywords are common and most are rare
+    static String keyword(Random random) {
+        double u = random.nextDouble();
+        return "kw" + (int) (KEYWORDS * u * u * u);
+    }
+
+    // Adds size foods to the database: mostly basic foods, plus composites built
+    // from earlier foods so that recipes nest
+    static List<Food> populateCatalog(FoodDatabaseService db, int size, Random random) {
+        List<Food> foods = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            List<String> keywords = Arrays.asList(keyword(random), keyword(random), keyword(random));
+            if (i >= 10 && random.nextInt(100) < COMPOSITE_PERCENT) {
+                List<FoodComponent> components = new ArrayList<>();
+                int count = 2 + random.nextInt(4);
+                for (int c = 0; c < count; c++) {
+                    components.add(new FoodComponent(foods.get(random.nextInt(foods.size())),
+                            0.5 + random.nextInt(4) * 0.5));
+                }
+                foods.add(db.addCompositeFood("Composite " + i, keywords, components));
+            } else {
+                foods.add(db.addBasicFood("Food " + i, keywords, 20 + random.nextInt(600)));
+            }
+        }
+        return foods;
+    }
+
+    // Adds size entries spread over DAYS days and all meal types
+    static void populateLog(FoodLogService log, List<Food> foods, int size, Random random) {
+        for (int i = 0; i < size; i++) {
+            log.addEntry(FIRST_DAY.plusDays(random.nextInt(DAYS)),
+                    LocalTime.ofSecondOfDay(random.nextInt(24 * 60 * 60)),
+                    MEAL_TYPES[random.nextInt(MEAL_TYPES.length)],
+                    foods.get(random.nextInt(foods.size())),
+                    0.5 + random.nextInt(6) * 0.5);
+        }
+        log.clearUndoStack();
+    }
+}
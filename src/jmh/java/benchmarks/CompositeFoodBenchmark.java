@@ -0,0 +1,61 @@
+package benchmarks;
+
+import backend.models.BasicFood;
+import backend.models.CompositeFood;
+import backend.models.Food;
+import backend.models.FoodComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// CompositeFood.getCaloriesPerServing on deep recipes: each level is a composite of
+// `width` components, all of them the level below except for one basic food
+@State(Scope.Benchmark)
+public class CompositeFoodBenchmark {
+    @Param({"4", "16", "64", "256"})
+    public int depth;
+
+    @Param({"2", "8"})
+    public int width;
+
+    private BasicFood leaf;
+    private CompositeFood top;
+    private double calories;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        leaf = new BasicFood("Leaf", Collections.singletonList("leaf"), 100);
+        Food level = leaf;
+        for (int d = 0; d < depth; d++) {
+            List<FoodComponent> components = new ArrayList<>();
+            components.add(new FoodComponent(new BasicFood("Side " + d, Collections.singletonList("side"), 10), 1));
+            for (int w = 1; w < width; w++) {
+                components.add(new FoodComponent(level, 1.0 / width));
+            }
+            level = new CompositeFood("Level " + d, Collections.singletonList("level"), components);
+        }
+        top = (CompositeFood) level;
+        calories = 100;
+    }
+
+    // Repeated reads of an unchanged recipe
+    @Benchmark
+    public double cached() {
+        return top.getCaloriesPerServing();
+    }
+
+    // Change the deepest ingredient, then read the top of the recipe again
+    @Benchmark
+    public double afterLeafChange() {
+        calories = calories == 100 ? 101 : 100;
+        leaf.setCaloriesPerServing(calories);
+        return top.getCaloriesPerServing();
+    }
+}
@@ -0,0 +1,98 @@
+package benchmarks;
+
+import backend.models.Food;
+import backend.models.FoodLogEntry;
+import backend.services.FoodDatabaseService;
+import backend.services.FoodLogCompactor;
+import backend.services.FoodLogJournal;
+import backend.services.FoodLogService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// FoodLogService under concurrent use. Run with -t <threads> to see how writers to
+// different days scale; each thread writes to a day of its own.
+@State(Scope.Benchmark)
+public class ConcurrentFoodLogBenchmark {
+    private static final int CATALOG_SIZE = 1000;
+
+    @Param({"100000"})
+    public int entries;
+
+    private File directory;
+    private FoodDatabaseService db;
+    private FoodLogService log;
+    private List<Food> foods;
+    private final AtomicInteger nextDay = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkData.newDirectory("concurrent-food-log-bench");
+        Random random = new Random(BenchmarkData.SEED);
+
+        db = new FoodDatabaseService(directory);
+        foods = BenchmarkData.populateCatalog(db, CATALOG_SIZE, random);
+        db.saveDatabase();
+
+        log = new FoodLogService(db, directory, FoodLogJournal.SyncPolicy.NONE,
+                FoodLogCompactor.Trigger.never(), FoodLogCompactor.SnapshotFormat.BINARY);
+        BenchmarkData.populateLog(log, foods, entries, random);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        log.close();
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadDay {
+        LocalDate day;
+        Random random;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentFoodLogBenchmark benchmark) {
+            int index = benchmark.nextDay.getAndIncrement();
+            day = BenchmarkData.FIRST_DAY.plusDays(index % BenchmarkData.DAYS);
+            random = new Random(BenchmarkData.SEED + index);
+        }
+    }
+
+    // Add an entry on the thread's own day and delete it again
+    @Benchmark
+    public boolean addAndDeleteOwnDay(ThreadDay thread) {
+        FoodLogEntry entry = log.addEntry(thread.day, LocalTime.NOON, "Lunch",
+                foods.get(thread.random.nextInt(foods.size())), 1);
+        return log.deleteEntry(entry.getId());
+    }
+
+    // Readers summing random days while one writer changes its own day
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public double readTotalForDay(ThreadDay thread) {
+        return log.calculateTotalCaloriesForDate(
+                BenchmarkData.FIRST_DAY.plusDays(thread.random.nextInt(BenchmarkData.DAYS)));
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public boolean writeOwnDay(ThreadDay thread) {
+        return addAndDeleteOwnDay(thread);
+    }
+}
@@ -0,0 +1,89 @@
+package benchmarks;
+
+import backend.models.Food;
+import backend.services.FoodDatabaseService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// FoodDatabaseService load, save, id lookup and keyword search
+@State(Scope.Benchmark)
+public class FoodDatabaseBenchmark {
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int foods;
+
+    // Where startup loads the catalog from: the JSON file or the mapped image
+    @Param({"IMAGE", "JSON"})
+    public String source;
+
+    private File directory;
+    private FoodDatabaseService db;
+    private String[] ids;
+    private List<String> commonKeywords;
+    private List<String> rareKeywords;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkData.newDirectory("food-db-bench");
+        random = new Random(BenchmarkData.SEED);
+
+        FoodDatabaseService builder = new FoodDatabaseService(directory);
+        List<Food> catalog = BenchmarkData.populateCatalog(builder, foods, random);
+        builder.saveDatabase();
+        if ("JSON".equals(source)) {
+            new File(directory, "food_database.bin").delete();
+        }
+
+        db = new FoodDatabaseService(directory);
+        ids = new String[Math.min(catalog.size(), 4096)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = catalog.get(random.nextInt(catalog.size())).getId();
+        }
+        commonKeywords = Arrays.asList("kw0", "kw1");
+        rareKeywords = Arrays.asList("kw400", "kw450", "kw499");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public FoodDatabaseService load() {
+        return new FoodDatabaseService(directory);
+    }
+
+    @Benchmark
+    public void save() {
+        db.saveDatabase();
+        if ("JSON".equals(source)) {
+            new File(directory, "food_database.bin").delete();
+        }
+    }
+
+    @Benchmark
+    public Food lookupById() {
+        return db.getFoodById(ids[random.nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public List<Food> searchAllKeywords() {
+        return db.searchFoodsByAllKeywords(commonKeywords);
+    }
+
+    @Benchmark
+    public List<Food> searchAnyKeyword() {
+        return db.searchFoodsByAnyKeyword(rareKeywords);
+    }
+}
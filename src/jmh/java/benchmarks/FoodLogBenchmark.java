@@ -0,0 +1,117 @@
+package benchmarks;
+
+import backend.models.Food;
+import backend.services.FoodDatabaseService;
+import backend.services.FoodLogCompactor;
+import backend.services.FoodLogJournal;
+import backend.services.FoodLogService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// FoodLogService load, save, per-day totals, daily summary and undo
+@State(Scope.Benchmark)
+public class FoodLogBenchmark {
+    private static final int CATALOG_SIZE = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int entries;
+
+    @Param({"BINARY", "JSON"})
+    public String snapshotFormat;
+
+    private File directory;
+    private FoodDatabaseService db;
+    private FoodLogService log;
+    private List<Food> foods;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = BenchmarkData.newDirectory("food-log-bench");
+        random = new Random(BenchmarkData.SEED);
+
+        db = new FoodDatabaseService(directory);
+        foods = BenchmarkData.populateCatalog(db, CATALOG_SIZE, random);
+        db.saveDatabase();
+
+        FoodLogService builder = open();
+        BenchmarkData.populateLog(builder, foods, entries, random);
+        builder.compactLog();
+        builder.close();
+
+        log = open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        log.close();
+        BenchmarkData.deleteDirectory(directory);
+    }
+
+    private FoodLogService open() {
+        return new FoodLogService(db, directory, FoodLogJournal.SyncPolicy.NONE,
+                FoodLogCompactor.Trigger.never(), FoodLogCompactor.SnapshotFormat.valueOf(snapshotFormat));
+    }
+
+    // Startup: read the snapshot and build the indexes
+    @Benchmark
+    public FoodLogService load() {
+        FoodLogService loaded = open();
+        loaded.close();
+        return loaded;
+    }
+
+    // Write a full snapshot of the log. Compaction skips a log with no sealed
+    // journal records, so every invocation first journals an add and its delete.
+    @Benchmark
+    public void save(PendingChange change) {
+        log.compactLog();
+    }
+
+    @State(Scope.Thread)
+    public static class PendingChange {
+        @Setup(Level.Invocation)
+        public void journal(FoodLogBenchmark benchmark) {
+            String id = benchmark.log.addEntry(BenchmarkData.FIRST_DAY, LocalTime.NOON, "Lunch",
+                    benchmark.foods.get(0), 1).getId();
+            benchmark.log.deleteEntry(id);
+        }
+    }
+
+    @Benchmark
+    public double totalForDay() {
+        return log.calculateTotalCaloriesForDate(BenchmarkData.FIRST_DAY.plusDays(random.nextInt(BenchmarkData.DAYS)));
+    }
+
+    @Benchmark
+    public double totalForMeal() {
+        return log.calculateCaloriesByMealType(BenchmarkData.FIRST_DAY.plusDays(random.nextInt(BenchmarkData.DAYS)),
+                BenchmarkData.MEAL_TYPES[random.nextInt(BenchmarkData.MEAL_TYPES.length)]);
+    }
+
+    @Benchmark
+    public Map<LocalDate, Double> dailyCalorieSummary() {
+        return log.getDailyCalorieSummary();
+    }
+
+    // Add an entry and undo it again, leaving the log unchanged
+    @Benchmark
+    public boolean addAndUndo() {
+        log.addEntry(BenchmarkData.FIRST_DAY.plusDays(random.nextInt(BenchmarkData.DAYS)), LocalTime.NOON,
+                "Lunch", foods.get(random.nextInt(foods.size())), 1);
+        return log.undo();
+    }
+}
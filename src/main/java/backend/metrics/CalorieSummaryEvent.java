@@ -0,0 +1,35 @@
+package backend.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for FoodLogService calorie totals and summaries
+@Name("yada.CalorieSummary")
+@Label("Calorie Summary")
+@Category({"YADA", "Food Log"})
+public class CalorieSummaryEvent extends Event {
+    @Label("Kind")
+    @Description("\"day\", \"meal\", \"range\" or \"daily\"")
+    public String kind;
+
+    @Label("Start Date")
+    public String startDate;
+
+    @Label("End Date")
+    public String endDate;
+
+    @Label("Days")
+    @Description("Logged days covered")
+    public int days;
+
+    @Label("Entries")
+    @Description("Entries whose calories were summed, or 0 when only cached totals were read")
+    public int entries;
+
+    @Label("Cache Hit")
+    @Description("Served from the running day totals and range tree without recomputing")
+    public boolean cacheHit;
+}
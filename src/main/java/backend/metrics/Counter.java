@@ -0,0 +1,38 @@
+package backend.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free monotonically increasing count; increments are dropped while metrics are disabled
+public class Counter {
+    private final String name;
+    private final LongAdder value;
+
+    Counter(String name) {
+        this.name = name;
+        this.value = new LongAdder();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void increment() {
+        if (Metrics.isEnabled()) {
+            value.increment();
+        }
+    }
+
+    public void add(long amount) {
+        if (Metrics.isEnabled()) {
+            value.add(amount);
+        }
+    }
+
+    public long get() {
+        return value.sum();
+    }
+
+    public void reset() {
+        value.reset();
+    }
+}
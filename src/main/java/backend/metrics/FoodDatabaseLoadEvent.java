@@ -0,0 +1,30 @@
+package backend.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for FoodDatabaseService startup: opening the catalog image, or parsing
+// food_database.json when the image is missing or stale
+@Name("yada.FoodDatabaseLoad")
+@Label("Food Database Load")
+@Category({"YADA", "Food Database"})
+public class FoodDatabaseLoadEvent extends Event {
+    @Label("Source")
+    @Description("\"image\" or \"json\"")
+    public String source;
+
+    @Label("Foods")
+    public int foods;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+
+    @Label("Cache Hit")
+    @Description("The catalog image was current, so the JSON was not parsed")
+    public boolean cacheHit;
+}
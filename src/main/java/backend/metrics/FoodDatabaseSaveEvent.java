@@ -0,0 +1,20 @@
+package backend.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for FoodDatabaseService.saveDatabase: food_database.json plus the catalog image
+@Name("yada.FoodDatabaseSave")
+@Label("Food Database Save")
+@Category({"YADA", "Food Database"})
+public class FoodDatabaseSaveEvent extends Event {
+    @Label("Foods")
+    public int foods;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytesWritten;
+}
@@ -0,0 +1,29 @@
+package backend.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for FoodLogService startup: reading the snapshot and replaying the journal
+@Name("yada.FoodLogLoad")
+@Label("Food Log Load")
+@Category({"YADA", "Food Log"})
+public class FoodLogLoadEvent extends Event {
+    @Label("Snapshot")
+    @Description("Snapshot file loaded, empty if there was none")
+    public String snapshot;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Journal Records")
+    @Description("Mutations replayed over the snapshot")
+    public int journalRecords;
+
+    @Label("Bytes Read")
+    @DataAmount
+    public long bytesRead;
+}
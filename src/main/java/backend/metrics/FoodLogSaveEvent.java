@@ -0,0 +1,22 @@
+package backend.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for FoodLogService.saveLog, which forces unsynced journal records to disk
+@Name("yada.FoodLogSave")
+@Label("Food Log Save")
+@Category({"YADA", "Food Log"})
+public class FoodLogSaveEvent extends Event {
+    @Label("Journal Records")
+    @Description("Records forced to disk by this save")
+    public int journalRecords;
+
+    @Label("Bytes Written")
+    @DataAmount
+    public long bytesWritten;
+}
@@ -0,0 +1,31 @@
+package backend.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// JFR event for FoodDatabaseService keyword searches
+@Name("yada.KeywordSearch")
+@Label("Keyword Search")
+@Category({"YADA", "Food Database"})
+public class KeywordSearchEvent extends Event {
+    @Label("Match")
+    @Description("\"all\" or \"any\"")
+    public String match;
+
+    @Label("Keywords")
+    public String keywords;
+
+    @Label("Results")
+    public int results;
+
+    @Label("Decoded Foods")
+    @Description("Foods decoded from the catalog image because they were not cached yet")
+    public int decodedFoods;
+
+    @Label("Cache Hit")
+    @Description("Every food returned was already in memory")
+    public boolean cacheHit;
+}
@@ -0,0 +1,121 @@
+package backend.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free log-linear histogram of durations in nanoseconds.
+// Each power of two is split into 8 linear sub-buckets, so recorded values are
+// kept to within 12.5% with a fixed 488-slot array; recording is a few atomic
+// adds and never allocates. Percentiles are read from the bucket counts.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder total;
+    private final LongAccumulator max;
+
+    LatencyHistogram(String name) {
+        this.name = name;
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.total = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        count.increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    // Records the time since a Metrics.start() value; does nothing if metrics were
+    // disabled when the operation started
+    public void recordSince(long start) {
+        if (start != 0) {
+            record(System.nanoTime() - start);
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return total.sum();
+    }
+
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) total.sum() / n;
+    }
+
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    // Upper bound of the bucket holding the given percentile (0-100)
+    public long getPercentileNanos(double percentile) {
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile / 100 * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(rank, 1)) {
+                return Math.min(lowerBound(i + 1) - 1, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        if (bucket >= BUCKETS) {
+            return Long.MAX_VALUE;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        return (1L << exponent) | ((long) sub << (exponent - SUB_BITS));
+    }
+}
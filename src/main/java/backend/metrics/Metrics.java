@@ -0,0 +1,219 @@
+package backend.metrics;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToLongFunction;
+
+// Process-wide registry of latency histograms, counters and gauges.
+// Instruments are looked up once (typically into static fields) and updated
+// lock-free. While metrics are disabled - the default, unless -Dyada.metrics=true -
+// start() returns 0, counters ignore updates and gauges are not registered, so an
+// instrumented operation costs one volatile read.
+//
+//   long start = Metrics.start();
+//   ...
+//   LOAD_TIME.recordSince(start);
+public final class Metrics {
+    private static final ConcurrentMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Set<Gauge<?>>> gauges = new ConcurrentHashMap<>();
+    // Gauges whose owner has been collected, waiting to be removed from gauges
+    private static final ReferenceQueue<Object> collectedOwners = new ReferenceQueue<>();
+    private static volatile boolean enabled = Boolean.getBoolean("yada.metrics");
+
+    private Metrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    // Start timestamp for LatencyHistogram.recordSince, or 0 when disabled
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    // Adds a gauge read from owner when a snapshot is taken. Several owners may share
+    // a name (e.g. one per user), in which case their values are summed. Owners are
+    // only weakly referenced, so registering does not keep a service alive; gauges of
+    // collected owners are dropped on the next registration or snapshot. Gauges
+    // registered while metrics are disabled are skipped for good.
+    public static <T> void gauge(String name, T owner, ToLongFunction<T> value) {
+        if (!enabled) {
+            return;
+        }
+        pruneGauges();
+        gauges.computeIfAbsent(name, n -> ConcurrentHashMap.newKeySet()).add(new Gauge<>(name, owner, value));
+    }
+
+    private static void pruneGauges() {
+        Reference<?> collected;
+        while ((collected = collectedOwners.poll()) != null) {
+            Gauge<?> gauge = (Gauge<?>) collected;
+            Set<Gauge<?>> owners = gauges.get(gauge.name);
+            if (owners != null) {
+                owners.remove(gauge);
+            }
+        }
+    }
+
+    public static Map<String, LatencyHistogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    public static Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Counter counter : counters.values()) {
+            values.put(counter.getName(), counter.get());
+        }
+        return values;
+    }
+
+    public static Map<String, Long> getGauges() {
+        pruneGauges();
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Set<Gauge<?>>> entry : gauges.entrySet()) {
+            long sum = 0;
+            for (Gauge<?> gauge : entry.getValue()) {
+                sum += gauge.read();
+            }
+            values.put(entry.getKey(), sum);
+        }
+        return values;
+    }
+
+    public static Map<String, String> getLatencies() {
+        Map<String, String> values = new TreeMap<>();
+        for (LatencyHistogram histogram : histograms.values()) {
+            values.put(histogram.getName(), String.format("count=%d mean=%.1fus p50=%.1fus p90=%.1fus p99=%.1fus max=%.1fus",
+                    histogram.getCount(), histogram.getMeanNanos() / 1000,
+                    histogram.getPercentileNanos(50) / 1000.0, histogram.getPercentileNanos(90) / 1000.0,
+                    histogram.getPercentileNanos(99) / 1000.0, histogram.getMaxNanos() / 1000.0));
+        }
+        return values;
+    }
+
+    // Snapshot of every instrument as a plain-text table
+    public static String report() {
+        StringBuilder report = new StringBuilder();
+        report.append("Metrics ").append(enabled ? "enabled" : "disabled").append('\n');
+
+        report.append(String.format("%-36s %10s %12s %12s %12s %12s %12s%n",
+                "Operation", "Count", "Mean(us)", "p50(us)", "p90(us)", "p99(us)", "Max(us)"));
+        for (LatencyHistogram histogram : getHistograms().values()) {
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            report.append(String.format("%-36s %10d %12.1f %12.1f %12.1f %12.1f %12.1f%n",
+                    histogram.getName(), histogram.getCount(), histogram.getMeanNanos() / 1000,
+                    histogram.getPercentileNanos(50) / 1000.0, histogram.getPercentileNanos(90) / 1000.0,
+                    histogram.getPercentileNanos(99) / 1000.0, histogram.getMaxNanos() / 1000.0));
+        }
+
+        report.append(String.format("%-36s %10s%n", "Counter", "Value"));
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            report.append(String.format("%-36s %10d%n", counter.getKey(), counter.getValue()));
+        }
+
+        report.append(String.format("%-36s %10s%n", "Gauge", "Value"));
+        for (Map.Entry<String, Long> gauge : getGauges().entrySet()) {
+            report.append(String.format("%-36s %10d%n", gauge.getKey(), gauge.getValue()));
+        }
+        return report.toString();
+    }
+
+    // Clears histograms and counters; gauges are live values and are kept
+    public static void reset() {
+        for (LatencyHistogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    // Publish the registry on the platform MBean server as backend:type=Metrics
+    public static void registerMBean() {
+        try {
+            ObjectName name = new ObjectName("backend:type=Metrics");
+            if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), name);
+            }
+        } catch (Exception e) {
+            System.err.println("Error registering metrics MBean: " + e.getMessage());
+        }
+    }
+
+    private static class Gauge<T> extends WeakReference<T> {
+        private final String name;
+        private final ToLongFunction<T> value;
+
+        Gauge(String name, T owner, ToLongFunction<T> value) {
+            super(owner, collectedOwners);
+            this.name = name;
+            this.value = value;
+        }
+
+        long read() {
+            T current = get();
+            return current == null ? 0 : value.applyAsLong(current);
+        }
+    }
+
+    private static class MBean implements MetricsMXBean {
+        @Override
+        public boolean isEnabled() {
+            return Metrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean enabled) {
+            Metrics.setEnabled(enabled);
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return Metrics.getCounters();
+        }
+
+        @Override
+        public Map<String, Long> getGauges() {
+            return Metrics.getGauges();
+        }
+
+        @Override
+        public Map<String, String> getLatencies() {
+            return Metrics.getLatencies();
+        }
+
+        @Override
+        public String getReport() {
+            return Metrics.report();
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
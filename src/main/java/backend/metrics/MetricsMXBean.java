@@ -0,0 +1,21 @@
+package backend.metrics;
+
+import java.util.Map;
+
+// JMX view of the metrics registry, registered as backend:type=Metrics
+public interface MetricsMXBean {
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    // Per histogram: "count=.. mean=..us p50=..us p90=..us p99=..us max=..us"
+    Map<String, String> getLatencies();
+
+    String getReport();
+
+    void reset();
+}
@@ -3,7 +3,7 @@ package backend.models;
 import java.util.List;
 
 public class BasicFood extends Food {
-    private double caloriesPerServing;
+    double caloriesPerServing;
 
     public BasicFood(String name, List<String> keywords, double caloriesPerServing) {
         super(name, keywords);
@@ -19,4 +19,10 @@ public class BasicFood extends Food {
     public double getCaloriesPerServing() {
         return caloriesPerServing;
     }
+
+    public void setCaloriesPerServing(double caloriesPerServing) {
+        this.caloriesPerServing = caloriesPerServing;
+        bumpCalorieVersion();
+        invalidateDependents();
+    }
 }
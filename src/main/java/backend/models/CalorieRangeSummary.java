@@ -0,0 +1,54 @@
+package backend.models;
+
+import java.time.LocalDate;
+
+public class CalorieRangeSummary {
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private double totalCalories;
+    private int loggedDays;
+    private double minDailyCalories;
+    private double maxDailyCalories;
+    
+    public CalorieRangeSummary(LocalDate startDate, LocalDate endDate, double totalCalories,
+                               int loggedDays, double minDailyCalories, double maxDailyCalories) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.totalCalories = totalCalories;
+        this.loggedDays = loggedDays;
+        this.minDailyCalories = minDailyCalories;
+        this.maxDailyCalories = maxDailyCalories;
+    }
+    
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+    
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+    
+    public double getTotalCalories() {
+        return totalCalories;
+    }
+    
+    // Number of days in the range that have at least one log entry
+    public int getLoggedDays() {
+        return loggedDays;
+    }
+    
+    // Lowest daily total among logged days (0 if nothing was logged)
+    public double getMinDailyCalories() {
+        return minDailyCalories;
+    }
+    
+    // Highest daily total among logged days (0 if nothing was logged)
+    public double getMaxDailyCalories() {
+        return maxDailyCalories;
+    }
+    
+    // Average over logged days only
+    public double getAverageDailyCalories() {
+        return loggedDays == 0 ? 0 : totalCalories / loggedDays;
+    }
+}
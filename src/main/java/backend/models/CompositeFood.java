@@ -4,10 +4,18 @@ import java.util.List;
 
 public class CompositeFood extends Food {
     private List<FoodComponent> components;
+    // Memoized calories per serving; cleared whenever anything in the recipe changes.
+    // The flag is volatile so a reader on another thread that sees it set also
+    // sees the cached value.
+    private double cachedCalories;
+    private volatile boolean caloriesValid;
+    // Compiled basic-food vector; cleared when the structure of the recipe changes
+    private FlatRecipe flatRecipe;
 
     public CompositeFood(String name, List<String> keywords, List<FoodComponent> components) {
         super(name, keywords);
         this.components = components;
+        attachComponents();
     }
 
     public List<FoodComponent> getComponents() {
@@ -15,7 +23,17 @@ public class CompositeFood extends Food {
     }
 
     public void setComponents(List<FoodComponent> components) {
+        detachComponents();
         this.components = components;
+        attachComponents();
+        invalidateStructure();
+    }
+
+    public FlatRecipe getFlatRecipe() {
+        if (flatRecipe == null) {
+            flatRecipe = FlatRecipe.compile(components);
+        }
+        return flatRecipe;
     }
 
     @Override
@@ -25,8 +43,43 @@ public class CompositeFood extends Food {
 
     @Override
     public double getCaloriesPerServing() {
-        return components.stream()
-                .mapToDouble(c -> c.getFood().getCaloriesPerServing() * c.getServings())
-                .sum();
+        if (!caloriesValid) {
+            cachedCalories = getFlatRecipe().getCaloriesPerServing();
+            caloriesValid = true;
+        }
+        return cachedCalories;
+    }
+
+    // Drops this composite's cache only; Food.invalidateDependents reaches the
+    // composites above it
+    void invalidateCalories() {
+        caloriesValid = false;
+    }
+
+    // Components, servings or nested recipes changed: drop the compiled vector
+    // here and in every composite built on top of this one
+    void invalidateStructure() {
+        bumpCalorieVersion();
+        caloriesValid = false;
+        if (flatRecipe != null) {
+            flatRecipe = null;
+            for (CompositeFood composite : getDependents()) {
+                composite.invalidateStructure();
+            }
+        } else {
+            invalidateDependents();
+        }
+    }
+
+    private void attachComponents() {
+        for (FoodComponent component : components) {
+            component.attach(this);
+        }
+    }
+
+    private void detachComponents() {
+        for (FoodComponent component : components) {
+            component.detach(this);
+        }
     }
 }
@@ -0,0 +1,84 @@
+package backend.models;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// A composite food compiled down to its basic foods: nesting is collapsed and
+// repeated ingredients are merged, leaving parallel arrays of basic foods and
+// the servings of each that go into one serving of the recipe.
+public final class FlatRecipe {
+    private final BasicFood[] foods;
+    private final double[] multipliers;
+
+    private FlatRecipe(BasicFood[] foods, double[] multipliers) {
+        this.foods = foods;
+        this.multipliers = multipliers;
+    }
+
+    static FlatRecipe compile(List<FoodComponent> components) {
+        Map<BasicFood, Integer> slots = new IdentityHashMap<>();
+        List<BasicFood> foods = new ArrayList<>();
+        double[] multipliers = new double[Math.max(components.size(), 4)];
+
+        for (FoodComponent component : components) {
+            Food food = component.getFood();
+            double servings = component.getServings();
+
+            if (food instanceof BasicFood) {
+                multipliers = accumulate(slots, foods, multipliers, (BasicFood) food, servings);
+            } else if (food instanceof CompositeFood) {
+                FlatRecipe nested = ((CompositeFood) food).getFlatRecipe();
+                for (int i = 0; i < nested.foods.length; i++) {
+                    multipliers = accumulate(slots, foods, multipliers,
+                            nested.foods[i], nested.multipliers[i] * servings);
+                }
+            }
+        }
+
+        double[] trimmed = new double[foods.size()];
+        System.arraycopy(multipliers, 0, trimmed, 0, trimmed.length);
+        return new FlatRecipe(foods.toArray(new BasicFood[0]), trimmed);
+    }
+
+    private static double[] accumulate(Map<BasicFood, Integer> slots, List<BasicFood> foods,
+                                       double[] multipliers, BasicFood food, double servings) {
+        Integer slot = slots.get(food);
+        if (slot == null) {
+            slot = foods.size();
+            slots.put(food, slot);
+            foods.add(food);
+            if (slot == multipliers.length) {
+                double[] grown = new double[multipliers.length * 2];
+                System.arraycopy(multipliers, 0, grown, 0, multipliers.length);
+                multipliers = grown;
+            }
+        }
+        multipliers[slot] += servings;
+        return multipliers;
+    }
+
+    // Reads the current calories of each basic food, so calorie edits never
+    // require the recipe to be recompiled
+    public double getCaloriesPerServing() {
+        double total = 0;
+        for (int i = 0; i < foods.length; i++) {
+            total += foods[i].caloriesPerServing * multipliers[i];
+        }
+        return total;
+    }
+
+    public int size() {
+        return foods.length;
+    }
+
+    public BasicFood getFood(int index) {
+        return foods[index];
+    }
+
+    // Servings of getFood(index) contained in one serving of the recipe
+    public double getMultiplier(int index) {
+        return multipliers[index];
+    }
+}
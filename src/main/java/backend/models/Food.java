@@ -1,17 +1,69 @@
 package backend.models;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Set;
 
 public abstract class Food {
+    // Bumped whenever any food's calories may have changed; lets caches built on
+    // top of food calories (e.g. daily log totals) detect that they are stale.
+    // Volatile so log readers on other threads see the change.
+    private static volatile long calorieVersion;
+
     protected String id;
     protected String name;
-    protected List<String> keywords;
+    // Keyword codes from SymbolTable.KEYWORDS, distinct, in the order given
+    protected int[] keywordCodes;
+    // Codes from SymbolTable.KEYWORD_SPELLINGS parallel to keywordCodes, so that
+    // getKeywords returns this food's own spelling; null while every keyword is
+    // spelled like the KEYWORDS name, which is the common case
+    protected int[] keywordSpellings;
+    // Composite foods that use this food as a component (reverse dependency edges)
+    private final List<CompositeFood> dependents = new ArrayList<>();
 
     public Food(String name, List<String> keywords) {
-        this.id = UUID.randomUUID().toString();
+        this.id = Id.next().toString();
         this.name = name;
-        this.keywords = keywords;
+        internKeywords(keywords);
+    }
+
+    private void internKeywords(List<String> keywords) {
+        int[] codes = new int[keywords.size()];
+        int[] spellings = null;
+        int count = 0;
+        for (String keyword : keywords) {
+            int code = SymbolTable.KEYWORDS.intern(keyword);
+            if (indexOf(codes, count, code) >= 0) {
+                continue;
+            }
+            String spelling = keyword.trim();
+            if (spellings == null && !spelling.equals(SymbolTable.KEYWORDS.name(code))) {
+                spellings = new int[codes.length];
+                for (int i = 0; i < count; i++) {
+                    spellings[i] = SymbolTable.KEYWORD_SPELLINGS.intern(SymbolTable.KEYWORDS.name(codes[i]));
+                }
+            }
+            if (spellings != null) {
+                spellings[count] = SymbolTable.KEYWORD_SPELLINGS.intern(spelling);
+            }
+            codes[count++] = code;
+        }
+        keywordCodes = count == codes.length ? codes : Arrays.copyOf(codes, count);
+        keywordSpellings = spellings == null || count == spellings.length ? spellings : Arrays.copyOf(spellings, count);
+    }
+
+    private static int indexOf(int[] codes, int count, int code) {
+        for (int i = 0; i < count; i++) {
+            if (codes[i] == code) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     public String getId() {
@@ -27,22 +79,84 @@ public abstract class Food {
     }
 
     public List<String> getKeywords() {
+        List<String> keywords = new ArrayList<>(keywordCodes.length);
+        for (int i = 0; i < keywordCodes.length; i++) {
+            keywords.add(keywordSpellings != null
+                    ? SymbolTable.KEYWORD_SPELLINGS.name(keywordSpellings[i])
+                    : SymbolTable.KEYWORDS.name(keywordCodes[i]));
+        }
         return keywords;
     }
 
+    public int[] getKeywordCodes() {
+        return keywordCodes;
+    }
+
+    public boolean hasKeyword(int code) {
+        return indexOf(keywordCodes, keywordCodes.length, code) >= 0;
+    }
+
+    // Keywords are matched ignoring case
     public boolean matchesAllKeywords(List<String> queryKeywords) {
-        return keywords.containsAll(queryKeywords);
+        for (String keyword : queryKeywords) {
+            int code = SymbolTable.KEYWORDS.find(keyword);
+            if (code < 0 || !hasKeyword(code)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public boolean matchesAnyKeyword(List<String> queryKeywords) {
         for (String keyword : queryKeywords) {
-            if (keywords.contains(keyword)) {
+            int code = SymbolTable.KEYWORDS.find(keyword);
+            if (code >= 0 && hasKeyword(code)) {
                 return true;
             }
         }
         return false;
     }
 
+    public static long getCalorieVersion() {
+        return calorieVersion;
+    }
+
+    static void bumpCalorieVersion() {
+        calorieVersion++;
+    }
+
+    void addDependent(CompositeFood composite) {
+        dependents.add(composite);
+    }
+
+    void removeDependent(CompositeFood composite) {
+        dependents.remove(composite);
+    }
+
+    List<CompositeFood> getDependents() {
+        return dependents;
+    }
+
+    // Called when this food's calories change so that cached values of every
+    // composite that (transitively) uses it are recomputed on next access.
+    // Composites compute calories from their flattened basic foods, so a parent
+    // may hold a valid cache above a nested composite whose cache is already
+    // invalid: every ancestor is visited, each once.
+    protected void invalidateDependents() {
+        if (dependents.isEmpty()) {
+            return;
+        }
+        Set<CompositeFood> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<CompositeFood> pending = new ArrayDeque<>(dependents);
+        while (!pending.isEmpty()) {
+            CompositeFood composite = pending.pop();
+            if (visited.add(composite)) {
+                composite.invalidateCalories();
+                pending.addAll(composite.getDependents());
+            }
+        }
+    }
+
     public abstract boolean isComposite();
 
     public abstract double getCaloriesPerServing();
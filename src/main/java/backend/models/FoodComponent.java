@@ -3,6 +3,8 @@ package backend.models;
 public class FoodComponent {
     private Food food;
     private double servings;
+    // Composite food this component belongs to, if any
+    private CompositeFood owner;
     
     public FoodComponent(Food food, double servings) {
         this.food = food;
@@ -14,7 +16,12 @@ public class FoodComponent {
     }
     
     public void setFood(Food food) {
+        if (owner != null) {
+            this.food.removeDependent(owner);
+            food.addDependent(owner);
+        }
         this.food = food;
+        invalidateOwner();
     }
     
     public double getServings() {
@@ -23,9 +30,28 @@ public class FoodComponent {
     
     public void setServings(double servings) {
         this.servings = servings;
+        invalidateOwner();
     }
     
     public double getTotalCalories() {
         return food.getCaloriesPerServing() * servings;
     }
+    
+    void attach(CompositeFood owner) {
+        this.owner = owner;
+        food.addDependent(owner);
+    }
+    
+    void detach(CompositeFood owner) {
+        if (this.owner == owner) {
+            food.removeDependent(owner);
+            this.owner = null;
+        }
+    }
+    
+    private void invalidateOwner() {
+        if (owner != null) {
+            owner.invalidateStructure();
+        }
+    }
 }
\ No newline at end of file
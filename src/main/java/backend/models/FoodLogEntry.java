@@ -2,21 +2,21 @@ package backend.models;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
-import java.util.UUID;
 
 public class FoodLogEntry {
     private String id;
     private LocalDate date;
     private LocalTime time;
-    private String mealType;
+    // Code from SymbolTable.MEAL_TYPES
+    private int mealType;
     private Food food;
     private double servings;
     
     public FoodLogEntry(LocalDate date, LocalTime time, String mealType, Food food, double servings) {
-        this.id = UUID.randomUUID().toString();
+        this.id = Id.next().toString();
         this.date = date;
         this.time = time;
-        this.mealType = mealType;
+        this.mealType = SymbolTable.MEAL_TYPES.intern(mealType);
         this.food = food;
         this.servings = servings;
     }
@@ -26,7 +26,7 @@ public class FoodLogEntry {
         this.id = id;
         this.date = date;
         this.time = time;
-        this.mealType = mealType;
+        this.mealType = SymbolTable.MEAL_TYPES.intern(mealType);
         this.food = food;
         this.servings = servings;
     }
@@ -56,11 +56,15 @@ public class FoodLogEntry {
     }
     
     public String getMealType() {
+        return SymbolTable.MEAL_TYPES.name(mealType);
+    }
+    
+    public int getMealTypeCode() {
         return mealType;
     }
     
     public void setMealType(String mealType) {
-        this.mealType = mealType;
+        this.mealType = SymbolTable.MEAL_TYPES.intern(mealType);
     }
     
     public Food getFood() {
@@ -0,0 +1,139 @@
+package backend.models;
+
+import java.util.UUID;
+
+// 128-bit identifier held as two longs, written in the usual 8-4-4-4-12 UUID form.
+// New ids come from the configured IdGenerator (time-ordered by default), but any
+// UUID string - including the random ones in existing files - parses back into an Id.
+// Ids compare as unsigned 128-bit numbers, which for time-ordered ids is creation order.
+public final class Id implements Comparable<Id> {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static volatile IdGenerator generator = new TimeOrderedIdGenerator();
+
+    private final long high;
+    private final long low;
+
+    public Id(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    // A fresh id from the current generator
+    public static Id next() {
+        return generator.next();
+    }
+
+    public static IdGenerator getGenerator() {
+        return generator;
+    }
+
+    public static void setGenerator(IdGenerator idGenerator) {
+        generator = idGenerator;
+    }
+
+    public static Id of(UUID uuid) {
+        return new Id(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    // Parses a lowercase 8-4-4-4-12 hex string; null for anything else, so that
+    // every parsed id prints back to exactly the same string
+    public static Id parse(String text) {
+        if (text == null || text.length() != 36) {
+            return null;
+        }
+        long high = 0;
+        long low = 0;
+        int digits = 0;
+        for (int i = 0; i < 36; i++) {
+            char c = text.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return null;
+                }
+                continue;
+            }
+
+            int value;
+            if (c >= '0' && c <= '9') {
+                value = c - '0';
+            } else if (c >= 'a' && c <= 'f') {
+                value = c - 'a' + 10;
+            } else {
+                return null;
+            }
+            if (digits < 16) {
+                high = (high << 4) | value;
+            } else {
+                low = (low << 4) | value;
+            }
+            digits++;
+        }
+        return new Id(high, low);
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    // Creation time in epoch milliseconds for time-ordered (version 7) ids, else -1
+    public long getTimestamp() {
+        return getVersion() == 7 ? high >>> 16 : -1;
+    }
+
+    public int getVersion() {
+        return (int) (high >>> 12) & 0xF;
+    }
+
+    public static String toString(long high, long low) {
+        char[] chars = new char[36];
+        writeHex(chars, 0, high >>> 32, 8);
+        chars[8] = '-';
+        writeHex(chars, 9, high >>> 16, 4);
+        chars[13] = '-';
+        writeHex(chars, 14, high, 4);
+        chars[18] = '-';
+        writeHex(chars, 19, low >>> 48, 4);
+        chars[23] = '-';
+        writeHex(chars, 24, low, 12);
+        return new String(chars);
+    }
+
+    private static void writeHex(char[] chars, int offset, long value, int digits) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = HEX[(int) value & 0xF];
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toString(high, low);
+    }
+
+    @Override
+    public int compareTo(Id other) {
+        int result = Long.compareUnsigned(high, other.high);
+        return result != 0 ? result : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Id)) {
+            return false;
+        }
+        Id other = (Id) o;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high ^ low);
+    }
+}
@@ -0,0 +1,11 @@
+package backend.models;
+
+import java.util.UUID;
+
+// Source of new food and log entry ids; see Id.setGenerator
+public interface IdGenerator {
+    // Random version 4 UUIDs from SecureRandom, as ids were generated originally
+    IdGenerator RANDOM = () -> Id.of(UUID.randomUUID());
+
+    Id next();
+}
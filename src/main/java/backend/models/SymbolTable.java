@@ -0,0 +1,94 @@
+package backend.models;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Interns short strings such as keywords and meal types as small int codes, so
+// models can store codes and hot paths can compare ints instead of strings.
+// Symbols are case-insensitive by default: the lookup key is normalized once when a
+// string is interned, and the first spelling seen is kept as the symbol's display
+// name. A case-sensitive table only trims, so every spelling gets its own code.
+// Codes are dense (0, 1, 2, ...) and never reused, so a table fed by clients is
+// given a limit on its size.
+public final class SymbolTable {
+    // Meal types come from every tenant's requests and live as long as the process
+    public static final int MAX_MEAL_TYPES = 1024;
+
+    public static final SymbolTable KEYWORDS = new SymbolTable();
+    public static final SymbolTable MEAL_TYPES = new SymbolTable(true, MAX_MEAL_TYPES);
+    // Keywords as spelled by each food, where that differs from the KEYWORDS name
+    public static final SymbolTable KEYWORD_SPELLINGS = new SymbolTable(false);
+
+    private final boolean ignoreCase;
+    private final int limit;
+    private final Map<String, Integer> codes;
+    private volatile String[] names;
+    private int size;
+
+    public SymbolTable() {
+        this(true);
+    }
+
+    public SymbolTable(boolean ignoreCase) {
+        this(ignoreCase, Integer.MAX_VALUE);
+    }
+
+    public SymbolTable(boolean ignoreCase, int limit) {
+        this.ignoreCase = ignoreCase;
+        this.limit = limit;
+        codes = new ConcurrentHashMap<>();
+        names = new String[16];
+    }
+
+    // Code for the symbol, assigning the next free one if it is new. Throws
+    // IllegalStateException if the symbol is new and the table is full.
+    public int intern(String symbol) {
+        String key = lookupKey(symbol);
+        Integer code = codes.get(key);
+        if (code != null) {
+            return code;
+        }
+
+        synchronized (this) {
+            code = codes.get(key);
+            if (code == null) {
+                if (size == limit) {
+                    throw new IllegalStateException("Too many distinct symbols: " + limit);
+                }
+                String[] current = names;
+                if (size == current.length) {
+                    current = Arrays.copyOf(current, size * 2);
+                }
+                current[size] = symbol.trim();
+                names = current;
+                code = size++;
+                codes.put(key, code);
+            }
+            return code;
+        }
+    }
+
+    // Code for the symbol, or -1 if it was never interned
+    public int find(String symbol) {
+        Integer code = codes.get(lookupKey(symbol));
+        return code == null ? -1 : code;
+    }
+
+    public String name(int code) {
+        return names[code];
+    }
+
+    public int size() {
+        return codes.size();
+    }
+
+    private String lookupKey(String symbol) {
+        return ignoreCase ? key(symbol) : symbol.trim();
+    }
+
+    public static String key(String symbol) {
+        return symbol.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,42 @@
+package backend.models;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+// UUID version 7 style ids: 48-bit Unix millisecond timestamp, version, a 12-bit
+// counter, variant and 62 random bits. The counter starts at a random value in
+// the lower half each millisecond and is incremented for ids created in the same
+// millisecond, so ids from one generator are strictly increasing. If the counter
+// runs out or the clock goes backwards, the timestamp is carried forward instead.
+public class TimeOrderedIdGenerator implements IdGenerator {
+    private static final int COUNTER_BITS = 12;
+    private static final int COUNTER_MAX = (1 << COUNTER_BITS) - 1;
+
+    private long lastMillis = -1;
+    private int counter;
+
+    @Override
+    public Id next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long millis;
+        int sequence;
+
+        synchronized (this) {
+            millis = System.currentTimeMillis();
+            if (millis > lastMillis) {
+                counter = random.nextInt(COUNTER_MAX / 2);
+            } else if (counter < COUNTER_MAX) {
+                millis = lastMillis;
+                counter++;
+            } else {
+                millis = lastMillis + 1;
+                counter = 0;
+            }
+            lastMillis = millis;
+            sequence = counter;
+        }
+
+        long high = (millis << 16) | (0x7L << 12) | sequence;
+        long low = (random.nextLong() >>> 2) | 0x8000_0000_0000_0000L;
+        return new Id(high, low);
+    }
+}
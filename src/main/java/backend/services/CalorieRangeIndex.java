@@ -0,0 +1,126 @@
+package backend.services;
+
+import backend.models.Food;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// Daily calorie totals of the whole log in one DayRangeTree, for O(log n) range
+// summaries whatever the number of stripes. It has its own lock: stripe writers
+// push the new total of a day they changed while still holding the stripe, and
+// readers query it optimistically like the stripes.
+// The tree is built lazily by rebuild(), which needs every stripe held at least
+// for reading, and goes stale (queries return null) when food calories change or
+// a day without a slot in the tree gets entries. Until rebuilt, updates are
+// ignored. The tree's size follows the number of logged days, so a rebuild under
+// those locks stays cheap however far apart the days are.
+// Lock order: stripes, then this index.
+class CalorieRangeIndex {
+    private static final double[] EMPTY = {0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+    private final StampedLock lock = new StampedLock();
+    // null when current but the log has no days
+    private DayRangeTree tree;
+    private boolean current;
+    private long version;
+    private volatile long builds;
+
+    // Returns {sum, loggedDays, min, max} of daily totals over [from, to], or null
+    // if rebuild() has to run first
+    double[] query(long fromDay, long toDay) {
+        if (toDay < fromDay) {
+            return EMPTY.clone();
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                double[] result = queryTree(fromDay, toDay);
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Inconsistent state seen mid-write; retried below
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            return queryTree(fromDay, toDay);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private double[] queryTree(long fromDay, long toDay) {
+        if (!current || version != Food.getCalorieVersion()) {
+            return null;
+        }
+        return tree == null ? EMPTY.clone() : tree.query(fromDay, toDay);
+    }
+
+    // New total of a day after one of its rows came or went; present is false once
+    // the day has no rows left. The day's stripe must be write-locked.
+    void update(long day, boolean present, double calories) {
+        long stamp = lock.writeLock();
+        try {
+            if (!current || version != Food.getCalorieVersion()) {
+                return;
+            }
+            if (tree == null || !tree.covers(day)) {
+                current = false;
+            } else if (present) {
+                tree.set(day, calories);
+            } else {
+                tree.clear(day);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Build the tree from the day totals of every index, unless it is current.
+    // No writer may change any of them meanwhile.
+    void rebuild(LogDateIndex[] indexes) {
+        long stamp = lock.writeLock();
+        try {
+            long calorieVersion = Food.getCalorieVersion();
+            if (current && version == calorieVersion) {
+                return;
+            }
+            // Each day lives in one stripe, so the days are distinct
+            int dayCount = 0;
+            for (LogDateIndex index : indexes) {
+                dayCount += index.dayCount();
+            }
+            long[] days = new long[dayCount];
+            int copied = 0;
+            for (LogDateIndex index : indexes) {
+                copied = index.copyDays(days, copied);
+            }
+            Arrays.sort(days);
+
+            tree = null;
+            if (dayCount > 0) {
+                tree = new DayRangeTree(days, dayCount);
+                for (LogDateIndex index : indexes) {
+                    index.loadDays(tree);
+                }
+                tree.build();
+            }
+            version = calorieVersion;
+            current = true;
+            builds++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    long getBuilds() {
+        return builds;
+    }
+
+    long getMemoryBytes() {
+        DayRangeTree built = tree;
+        return built == null ? 0 : built.getMemoryBytes();
+    }
+}
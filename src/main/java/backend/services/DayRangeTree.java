@@ -0,0 +1,183 @@
+package backend.services;
+
+import java.util.Arrays;
+
+// Segment tree over the calorie totals of a sorted set of epoch days, its slots.
+// Point updates and range sum/min/max/count queries are O(log n) in the number
+// of slots. Days without entries contribute nothing to min/max/count.
+// Slots are the days logged when the tree was built, plus the days of short gaps
+// between them and a stretch after the last one, so that ordinary new entries
+// land on an existing slot. Memory is proportional to the logged days rather
+// than to their span: a stray date centuries away costs a single slot.
+// A day without a slot cannot be set; the owner rebuilds the tree instead.
+class DayRangeTree {
+    // Gaps between logged days of up to this many days get slots of their own
+    static final int MAX_GAP = 31;
+    // Days after the last logged one that get slots
+    static final int HEADROOM = 62;
+    // Keeps the node arrays well within int indexes
+    private static final int MAX_SLOTS = 1 << 28;
+
+    private final long[] days;
+    private final int slotCount;
+    private final int size;
+    private final double[] sum;
+    private final double[] min;
+    private final double[] max;
+    private final int[] count;
+
+    // Slots for the first count (at least one) days of logged, which must be sorted
+    // and distinct. Gap days are added only while they number no more than the
+    // logged days.
+    DayRangeTree(long[] logged, int count) {
+        long budget = count;
+        long slots = count + Math.min(HEADROOM, Long.MAX_VALUE - logged[count - 1]);
+        for (int i = 1; i < count; i++) {
+            long gap = logged[i] - logged[i - 1] - 1;
+            if (gap > 0 && gap <= MAX_GAP && gap <= budget) {
+                budget -= gap;
+                slots += gap;
+            }
+        }
+        if (slots > MAX_SLOTS) {
+            throw new IllegalStateException("Too many logged days for a range tree: " + count);
+        }
+
+        this.slotCount = (int) slots;
+        this.days = new long[slotCount];
+        budget = count;
+        int slot = 0;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                long gap = logged[i] - logged[i - 1] - 1;
+                if (gap > 0 && gap <= MAX_GAP && gap <= budget) {
+                    budget -= gap;
+                    for (long day = logged[i - 1] + 1; day < logged[i]; day++) {
+                        days[slot++] = day;
+                    }
+                }
+            }
+            days[slot++] = logged[i];
+        }
+        for (long day = logged[count - 1] + 1; slot < slotCount; day++) {
+            days[slot++] = day;
+        }
+
+        int capacity = 1;
+        while (capacity < slotCount) {
+            capacity <<= 1;
+        }
+        this.size = capacity;
+        this.sum = new double[size * 2];
+        this.min = new double[size * 2];
+        this.max = new double[size * 2];
+        this.count = new int[size * 2];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+    }
+
+    boolean covers(long day) {
+        return Arrays.binarySearch(days, day) >= 0;
+    }
+
+    // Set a day's total without recomputing parents; call build() afterwards
+    void load(long day, double calories) {
+        int node = leaf(day);
+        sum[node] = calories;
+        min[node] = calories;
+        max[node] = calories;
+        count[node] = 1;
+    }
+
+    void build() {
+        for (int node = size - 1; node > 0; node--) {
+            pull(node);
+        }
+    }
+
+    // The day must be covered
+    void set(long day, double calories) {
+        int node = leaf(day);
+        sum[node] = calories;
+        min[node] = calories;
+        max[node] = calories;
+        count[node] = 1;
+        for (node >>= 1; node > 0; node >>= 1) {
+            pull(node);
+        }
+    }
+
+    // The day must be covered
+    void clear(long day) {
+        int node = leaf(day);
+        sum[node] = 0;
+        min[node] = Double.POSITIVE_INFINITY;
+        max[node] = Double.NEGATIVE_INFINITY;
+        count[node] = 0;
+        for (node >>= 1; node > 0; node >>= 1) {
+            pull(node);
+        }
+    }
+
+    // Returns {sum, count, min, max} over the slots in [fromDay, toDay]
+    double[] query(long fromDay, long toDay) {
+        double totalSum = 0;
+        int totalCount = 0;
+        double totalMin = Double.POSITIVE_INFINITY;
+        double totalMax = Double.NEGATIVE_INFINITY;
+
+        int lo = firstSlotFrom(fromDay) + size;
+        int hi = firstSlotAfter(toDay) + size;
+        while (lo < hi) {
+            if ((lo & 1) == 1) {
+                totalSum += sum[lo];
+                totalCount += count[lo];
+                totalMin = Math.min(totalMin, min[lo]);
+                totalMax = Math.max(totalMax, max[lo]);
+                lo++;
+            }
+            if ((hi & 1) == 1) {
+                hi--;
+                totalSum += sum[hi];
+                totalCount += count[hi];
+                totalMin = Math.min(totalMin, min[hi]);
+                totalMax = Math.max(totalMax, max[hi]);
+            }
+            lo >>= 1;
+            hi >>= 1;
+        }
+        return new double[] {totalSum, totalCount, totalMin, totalMax};
+    }
+
+    // Heap held by the slot and node arrays and their headers
+    long getMemoryBytes() {
+        return 8L * days.length + (long) size * 2 * (8 + 8 + 8 + 4) + 5 * 16 + 48;
+    }
+
+    private int leaf(long day) {
+        int slot = Arrays.binarySearch(days, day);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Day " + day + " has no slot in the range tree");
+        }
+        return slot + size;
+    }
+
+    private int firstSlotFrom(long day) {
+        int slot = Arrays.binarySearch(days, day);
+        return slot >= 0 ? slot : -slot - 1;
+    }
+
+    private int firstSlotAfter(long day) {
+        int slot = Arrays.binarySearch(days, day);
+        return slot >= 0 ? slot + 1 : -slot - 1;
+    }
+
+    private void pull(int node) {
+        int left = node << 1;
+        int right = left | 1;
+        sum[node] = sum[left] + sum[right];
+        count[node] = count[left] + count[right];
+        min[node] = Math.min(min[left], min[right]);
+        max[node] = Math.max(max[left], max[right]);
+    }
+}
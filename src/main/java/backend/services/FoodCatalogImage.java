@@ -0,0 +1,610 @@
+package backend.services;
+
+import backend.models.CompositeFood;
+import backend.models.Food;
+import backend.models.FoodComponent;
+import backend.models.SymbolTable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Prebuilt, memory-mapped image of the food catalog.
+// Opening it only maps the file and reads the header; foods are decoded from
+// their fixed-width records on demand, so startup cost does not depend on
+// catalog size.
+//
+// Layout (big-endian): a header of int magic 'YDFC', int version, int foodCount,
+// int keywordCount, int idSlots, int nameSlots, the long offsets of each section
+// and the long length and modification time of the JSON file the image was saved
+// with, followed by the sections:
+//   strings       UTF-8 bytes, referenced as (int offset, int length)
+//   records       per food: id ref, name ref, double calories, int flags,
+//                 int firstKeyword, int keywordCount, int firstComponent, int componentCount,
+//                 int next food with the same name + 1 (0 = none)
+//   food keywords string refs, per food
+//   components    per component: int food index, double servings
+//   keyword index sorted by keyword bytes: keyword ref, int firstPosting, int postingCount
+//                 (keywords normalized with SymbolTable.key, so lookups ignore case)
+//   postings      ascending food indexes
+//   id index      open-addressing hash table of food index + 1 (0 = empty)
+//   name index    same, keyed by lower-cased name, holding the first food with that name
+final class FoodCatalogImage {
+    private static final int MAGIC = 0x5944_4643; // "YDFC"
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 6 * 4 + 10 * 8;
+    private static final int RECORD_SIZE = 4 * 4 + 8 + 4 * 6;
+    private static final int FLAG_COMPOSITE = 1;
+    private static final int WRITE_BUFFER = 64 * 1024;
+
+    private final MappedByteBuffer buffer;
+    private final int foodCount;
+    private final int keywordCount;
+    private final int idSlots;
+    private final int nameSlots;
+    private final long records;
+    private final long foodKeywords;
+    private final long components;
+    private final long keywordIndex;
+    private final long postings;
+    private final long idIndex;
+    private final long nameIndex;
+    private final long sourceLength;
+    private final long sourceModified;
+
+    private FoodCatalogImage(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a food catalog image");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported food catalog image version " + buffer.getInt(4));
+        }
+        foodCount = buffer.getInt(8);
+        keywordCount = buffer.getInt(12);
+        idSlots = buffer.getInt(16);
+        nameSlots = buffer.getInt(20);
+        // offset 24 holds the strings section, which is addressed by absolute offsets
+        records = buffer.getLong(32);
+        foodKeywords = buffer.getLong(40);
+        components = buffer.getLong(48);
+        keywordIndex = buffer.getLong(56);
+        postings = buffer.getLong(64);
+        idIndex = buffer.getLong(72);
+        nameIndex = buffer.getLong(80);
+        sourceLength = buffer.getLong(88);
+        sourceModified = buffer.getLong(96);
+        if (nameIndex + 4L * nameSlots != buffer.capacity()) {
+            throw new IOException("Truncated food catalog image");
+        }
+    }
+
+    static FoodCatalogImage open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Food catalog image too large to map");
+            }
+            return new FoodCatalogImage(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    int size() {
+        return foodCount;
+    }
+
+    // Whether the image still holds what was saved to the JSON file along with it.
+    // If the JSON file has been replaced or edited since, it is the one to load.
+    boolean isCurrentFor(File source) {
+        return !source.exists() || (source.length() == sourceLength && source.lastModified() == sourceModified);
+    }
+
+    String getId(int index) {
+        return string(record(index));
+    }
+
+    String getName(int index) {
+        return string(record(index) + 8);
+    }
+
+    double getCaloriesPerServing(int index) {
+        return buffer.getDouble((int) record(index) + 16);
+    }
+
+    boolean isComposite(int index) {
+        return (buffer.getInt((int) record(index) + 24) & FLAG_COMPOSITE) != 0;
+    }
+
+    List<String> getKeywords(int index) {
+        int base = (int) record(index);
+        int first = buffer.getInt(base + 28);
+        int count = buffer.getInt(base + 32);
+        List<String> keywords = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keywords.add(string(foodKeywords + 8L * (first + i)));
+        }
+        return keywords;
+    }
+
+    int getComponentCount(int index) {
+        return buffer.getInt((int) record(index) + 40);
+    }
+
+    int getComponentFood(int index, int component) {
+        return buffer.getInt((int) componentAt(index, component));
+    }
+
+    double getComponentServings(int index, int component) {
+        return buffer.getDouble((int) componentAt(index, component) + 4);
+    }
+
+    // Index of the food with this id, or -1
+    int findById(String id) {
+        return find(idIndex, idSlots, id, false);
+    }
+
+    // Index of the first food with this name (case-insensitive), or -1
+    int findByName(String name) {
+        return find(nameIndex, nameSlots, nameKey(name), true);
+    }
+
+    // Index of the next food with the same name as the one at index, or -1
+    int findNextByName(int index) {
+        return buffer.getInt((int) record(index) + 44) - 1;
+    }
+
+    // Ascending indexes of foods with this keyword, ignoring case (empty if none)
+    int[] getPostings(String keyword) {
+        byte[] key = SymbolTable.key(keyword).getBytes(StandardCharsets.UTF_8);
+        int lo = 0;
+        int hi = keywordCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long entry = keywordIndex + 16L * mid;
+            int cmp = compare(entry, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                int first = buffer.getInt((int) entry + 8);
+                int[] result = new int[buffer.getInt((int) entry + 12)];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = buffer.getInt((int) (postings + 4L * (first + i)));
+                }
+                return result;
+            }
+        }
+        return new int[0];
+    }
+
+    private int find(long table, int slots, String key, boolean byName) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        int mask = slots - 1;
+        for (int slot = hash(bytes) & mask; ; slot = (slot + 1) & mask) {
+            int value = buffer.getInt((int) (table + 4L * slot));
+            if (value == 0) {
+                return -1;
+            }
+            int index = value - 1;
+            boolean match = byName
+                    ? nameKey(getName(index)).equals(key)
+                    : compare(record(index), bytes) == 0;
+            if (match) {
+                return index;
+            }
+        }
+    }
+
+    private long record(int index) {
+        if (index < 0 || index >= foodCount) {
+            throw new IndexOutOfBoundsException("Food index " + index);
+        }
+        return records + (long) RECORD_SIZE * index;
+    }
+
+    private long componentAt(int index, int component) {
+        int first = buffer.getInt((int) record(index) + 36);
+        return components + 12L * (first + component);
+    }
+
+    private String string(long ref) {
+        int offset = buffer.getInt((int) ref);
+        int length = buffer.getInt((int) ref + 4);
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Compare the string referenced at ref with key, byte-wise unsigned
+    private int compare(long ref, byte[] key) {
+        int offset = buffer.getInt((int) ref);
+        int length = buffer.getInt((int) ref + 4);
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(buffer.get(offset + i) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static int hash(byte[] key) {
+        int h = Arrays.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // Stream an image of contents to a temp file and rename it into place. Component
+    // references to foods outside contents are dropped. Besides contents, only the
+    // distinct keywords, postings and hash indexes are held in memory.
+    // The source fingerprint is that of the JSON file saved with the image.
+    static void write(Path path, Contents contents, long sourceLength, long sourceModified) throws IOException {
+        int foodCount = contents.size();
+        int slots = Integer.highestOneBit(Math.max(2, foodCount * 2 - 1)) << 1;
+        int mask = slots - 1;
+        int[] idTable = new int[slots];
+        int[] nameTable = new int[slots];
+        // Same-name chains: next food + 1 per food, and the chain's last food + 1 per head
+        int[] nextSameName = new int[foodCount];
+        int[] lastSameName = new int[foodCount];
+
+        // First pass: section sizes, keyword strings, postings and hash indexes
+        StringTable keywordStrings = new StringTable();
+        TreeMap<String, IntList> postingsByKeyword = new TreeMap<>(FoodCatalogImage::compareUtf8);
+        long foodStringBytes = 0;
+        int keywordRefs = 0;
+        int componentCount = 0;
+        int postingCount = 0;
+        for (int i = 0; i < foodCount; i++) {
+            byte[] id = contents.getId(i).getBytes(StandardCharsets.UTF_8);
+            String name = contents.getName(i);
+            foodStringBytes += id.length + name.getBytes(StandardCharsets.UTF_8).length;
+
+            for (String keyword : contents.getKeywords(i)) {
+                keywordStrings.add(keyword);
+                keywordStrings.add(SymbolTable.key(keyword));
+                IntList posting = postingsByKeyword.computeIfAbsent(SymbolTable.key(keyword), k -> new IntList());
+                if (posting.size == 0 || posting.values[posting.size - 1] != i) {
+                    posting.add(i);
+                    postingCount++;
+                }
+                keywordRefs++;
+            }
+            componentCount += resolvedComponents(contents, i);
+
+            // Ids are unique; a repeated name joins the chain of the first food with it
+            int slot = hash(id) & mask;
+            while (idTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            idTable[slot] = i + 1;
+
+            String key = nameKey(name);
+            for (slot = hash(key.getBytes(StandardCharsets.UTF_8)) & mask; ; slot = (slot + 1) & mask) {
+                int head = nameTable[slot] - 1;
+                if (head < 0) {
+                    nameTable[slot] = i + 1;
+                    lastSameName[i] = i + 1;
+                    break;
+                }
+                if (nameKey(contents.getName(head)).equals(key)) {
+                    nextSameName[lastSameName[head] - 1] = i + 1;
+                    lastSameName[head] = i + 1;
+                    break;
+                }
+            }
+        }
+
+        long stringsOffset = HEADER_SIZE;
+        long recordsOffset = stringsOffset + keywordStrings.size() + foodStringBytes;
+        long foodKeywordsOffset = recordsOffset + (long) RECORD_SIZE * foodCount;
+        long componentsOffset = foodKeywordsOffset + 8L * keywordRefs;
+        long keywordIndexOffset = componentsOffset + 12L * componentCount;
+        long postingsOffset = keywordIndexOffset + 16L * postingsByKeyword.size();
+        long idIndexOffset = postingsOffset + 4L * postingCount;
+        long nameIndexOffset = idIndexOffset + 4L * slots;
+        long total = nameIndexOffset + 4L * slots;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Food catalog too large for a single image");
+        }
+        keywordStrings.place((int) stringsOffset);
+
+        // Second pass: write the sections in order
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), WRITE_BUFFER));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(foodCount);
+            out.writeInt(postingsByKeyword.size());
+            out.writeInt(slots);
+            out.writeInt(slots);
+            for (long offset : new long[] {stringsOffset, recordsOffset, foodKeywordsOffset, componentsOffset,
+                    keywordIndexOffset, postingsOffset, idIndexOffset, nameIndexOffset}) {
+                out.writeLong(offset);
+            }
+            out.writeLong(sourceLength);
+            out.writeLong(sourceModified);
+
+            keywordStrings.writeTo(out);
+            for (int i = 0; i < foodCount; i++) {
+                out.write(contents.getId(i).getBytes(StandardCharsets.UTF_8));
+                out.write(contents.getName(i).getBytes(StandardCharsets.UTF_8));
+            }
+
+            long stringCursor = stringsOffset + keywordStrings.size();
+            int keywordCursor = 0;
+            int componentCursor = 0;
+            for (int i = 0; i < foodCount; i++) {
+                int idLength = contents.getId(i).getBytes(StandardCharsets.UTF_8).length;
+                int nameLength = contents.getName(i).getBytes(StandardCharsets.UTF_8).length;
+                int keywordCount = contents.getKeywords(i).size();
+                int components = resolvedComponents(contents, i);
+                out.writeInt((int) stringCursor);
+                out.writeInt(idLength);
+                out.writeInt((int) stringCursor + idLength);
+                out.writeInt(nameLength);
+                out.writeDouble(contents.getCaloriesPerServing(i));
+                out.writeInt(contents.isComposite(i) ? FLAG_COMPOSITE : 0);
+                out.writeInt(keywordCursor);
+                out.writeInt(keywordCount);
+                out.writeInt(componentCursor);
+                out.writeInt(components);
+                out.writeInt(nextSameName[i]);
+                stringCursor += idLength + nameLength;
+                keywordCursor += keywordCount;
+                componentCursor += components;
+            }
+
+            for (int i = 0; i < foodCount; i++) {
+                for (String keyword : contents.getKeywords(i)) {
+                    writeRef(out, keywordStrings.ref(keyword));
+                }
+            }
+
+            for (int i = 0; i < foodCount; i++) {
+                for (int c = 0; c < contents.getComponentCount(i); c++) {
+                    int target = contents.getComponentPosition(i, c);
+                    if (target >= 0) {
+                        out.writeInt(target);
+                        out.writeDouble(contents.getComponentServings(i, c));
+                    }
+                }
+            }
+
+            int postingCursor = 0;
+            for (Map.Entry<String, IntList> keyword : postingsByKeyword.entrySet()) {
+                writeRef(out, keywordStrings.ref(keyword.getKey()));
+                out.writeInt(postingCursor);
+                out.writeInt(keyword.getValue().size);
+                postingCursor += keyword.getValue().size;
+            }
+            for (IntList posting : postingsByKeyword.values()) {
+                for (int i = 0; i < posting.size; i++) {
+                    out.writeInt(posting.values[i]);
+                }
+            }
+
+            for (int value : idTable) {
+                out.writeInt(value);
+            }
+            for (int value : nameTable) {
+                out.writeInt(value);
+            }
+            out.flush();
+            if (out.size() != total) {
+                throw new IOException("Food catalog image is " + out.size() + " bytes, expected " + total);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int resolvedComponents(Contents contents, int position) {
+        int resolved = 0;
+        for (int c = 0; c < contents.getComponentCount(position); c++) {
+            if (contents.getComponentPosition(position, c) >= 0) {
+                resolved++;
+            }
+        }
+        return resolved;
+    }
+
+    private static void writeRef(DataOutputStream out, int[] ref) throws IOException {
+        out.writeInt(ref[0]);
+        out.writeInt(ref[1]);
+    }
+
+    private static int compareUtf8(String a, String b) {
+        byte[] x = a.getBytes(StandardCharsets.UTF_8);
+        byte[] y = b.getBytes(StandardCharsets.UTF_8);
+        return Arrays.compareUnsigned(x, y);
+    }
+
+    // Deduplicated string pool laid out contiguously at the start of the strings section
+    private static class StringTable {
+        private final Map<String, int[]> refs = new HashMap<>();
+        private final List<byte[]> values = new ArrayList<>();
+        private int size;
+
+        void add(String value) {
+            if (!refs.containsKey(value)) {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                refs.put(value, new int[] {size, bytes.length});
+                values.add(bytes);
+                size += bytes.length;
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        // Absolute (offset, length) once place has fixed the section's position
+        int[] ref(String value) {
+            return refs.get(value);
+        }
+
+        void place(int base) {
+            for (int[] ref : refs.values()) {
+                ref[0] += base;
+            }
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            for (byte[] bytes : values) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private static class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+
+    // The foods of a new image, in order. Each is either copied from a record of an
+    // existing image, without decoding it into a Food, or encoded from a Food.
+    static final class Contents {
+        private final FoodCatalogImage base;
+        // Per position: the base image record, or -1; and the Food, or null for copies
+        private int[] baseIndexes = new int[16];
+        private Food[] foods = new Food[16];
+        private int size;
+        // Position of each base record that is included, -1 for the others
+        private final int[] positionsInBase;
+        private final Map<Food, Integer> positionsOfFoods = new IdentityHashMap<>();
+
+        // base may be null if every food is encoded
+        Contents(FoodCatalogImage base) {
+            this.base = base;
+            this.positionsInBase = new int[base == null ? 0 : base.size()];
+            Arrays.fill(positionsInBase, -1);
+        }
+
+        // Copy the record at index of the base image
+        void addCopy(int index) {
+            add(index, null);
+        }
+
+        // Encode the food; baseIndex is its record in the base image, or -1
+        void addFood(Food food, int baseIndex) {
+            add(baseIndex, food);
+        }
+
+        private void add(int baseIndex, Food food) {
+            if (size == baseIndexes.length) {
+                baseIndexes = Arrays.copyOf(baseIndexes, size * 2);
+                foods = Arrays.copyOf(foods, size * 2);
+            }
+            baseIndexes[size] = baseIndex;
+            foods[size] = food;
+            if (baseIndex >= 0) {
+                positionsInBase[baseIndex] = size;
+            }
+            if (food != null) {
+                positionsOfFoods.put(food, size);
+            }
+            size++;
+        }
+
+        int size() {
+            return size;
+        }
+
+        String getId(int position) {
+            Food food = foods[position];
+            return food != null ? food.getId() : base.getId(baseIndexes[position]);
+        }
+
+        String getName(int position) {
+            Food food = foods[position];
+            return food != null ? food.getName() : base.getName(baseIndexes[position]);
+        }
+
+        double getCaloriesPerServing(int position) {
+            Food food = foods[position];
+            return food != null ? food.getCaloriesPerServing() : base.getCaloriesPerServing(baseIndexes[position]);
+        }
+
+        boolean isComposite(int position) {
+            Food food = foods[position];
+            return food != null ? food.isComposite() : base.isComposite(baseIndexes[position]);
+        }
+
+        List<String> getKeywords(int position) {
+            Food food = foods[position];
+            return food != null ? food.getKeywords() : base.getKeywords(baseIndexes[position]);
+        }
+
+        int getComponentCount(int position) {
+            Food food = foods[position];
+            if (food == null) {
+                return base.getComponentCount(baseIndexes[position]);
+            }
+            return food instanceof CompositeFood ? ((CompositeFood) food).getComponents().size() : 0;
+        }
+
+        // Position of the component's food, or -1 if it is not included
+        int getComponentPosition(int position, int component) {
+            Food food = foods[position];
+            if (food == null) {
+                return positionsInBase[base.getComponentFood(baseIndexes[position], component)];
+            }
+            Integer target = positionsOfFoods.get(component(food, component).getFood());
+            return target == null ? -1 : target;
+        }
+
+        // Id of the component's food, included or not
+        String getComponentId(int position, int component) {
+            Food food = foods[position];
+            return food != null
+                    ? component(food, component).getFood().getId()
+                    : base.getId(base.getComponentFood(baseIndexes[position], component));
+        }
+
+        double getComponentServings(int position, int component) {
+            Food food = foods[position];
+            return food != null
+                    ? component(food, component).getServings()
+                    : base.getComponentServings(baseIndexes[position], component);
+        }
+
+        private static FoodComponent component(Food food, int component) {
+            return ((CompositeFood) food).getComponents().get(component);
+        }
+    }
+}
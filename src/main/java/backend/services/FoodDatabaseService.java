@@ -1,5 +1,11 @@
 package backend.services;
 
+import backend.metrics.Counter;
+import backend.metrics.FoodDatabaseLoadEvent;
+import backend.metrics.FoodDatabaseSaveEvent;
+import backend.metrics.KeywordSearchEvent;
+import backend.metrics.LatencyHistogram;
+import backend.metrics.Metrics;
 import backend.models.Food;
 import backend.models.BasicFood;
 import backend.models.CompositeFood;
@@ -7,190 +13,621 @@ import backend.models.FoodComponent;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Locale;
+import java.util.Map;
 
 public class FoodDatabaseService {
     private static final String FOOD_DB_FILE = "food_database.json";
+    private static final String FOOD_CATALOG_IMAGE_FILE = "food_database.bin";
+    private static final int WRITE_BUFFER = 64 * 1024;
+    private static final LatencyHistogram LOAD_TIME = Metrics.histogram("foodDatabase.load");
+    private static final LatencyHistogram SAVE_TIME = Metrics.histogram("foodDatabase.save");
+    private static final LatencyHistogram LOOKUP_TIME = Metrics.histogram("foodDatabase.lookupById");
+    private static final LatencyHistogram SEARCH_ALL_TIME = Metrics.histogram("foodDatabase.searchAllKeywords");
+    private static final LatencyHistogram SEARCH_ANY_TIME = Metrics.histogram("foodDatabase.searchAnyKeyword");
+    private static final LatencyHistogram ADD_TIME = Metrics.histogram("foodDatabase.add");
+    private static final LatencyHistogram DELETE_TIME = Metrics.histogram("foodDatabase.delete");
+    private static final Counter SEARCH_RESULTS = Metrics.counter("foodDatabase.searchResults");
+    // Directory holding the database files; null for the working directory
+    private final File dataDirectory;
     private List<Food> foods;
+    // Lookup indexes kept in sync with foods; names are keyed case-insensitively
+    private Map<String, Food> foodsById;
+    private Map<String, Food> foodsByName;
+    private KeywordIndex keywordIndex;
+    // When a catalog image is mapped, its foods come first and are only decoded
+    // on access; foods/foodsById/keywordIndex then hold just the foods added since
+    private FoodCatalogImage catalogImage;
+    private Map<Integer, Food> imageFoods;
+    private BitSet deletedImageFoods;
+    // Foods decoded from the image so far, i.e. misses of the imageFoods cache
+    private long decodedImageFoods;
 
     public FoodDatabaseService() {
-        foods = new ArrayList<>();
-        loadDatabase();
+        this(null);
     }
 
-    private void loadDatabase() {
-        File file = new File(FOOD_DB_FILE);
+    public FoodDatabaseService(File dataDirectory) {
+        this.dataDirectory = dataDirectory;
+        foods = new ArrayList<>();
+        foodsById = new HashMap<>();
+        foodsByName = new HashMap<>();
+        keywordIndex = new KeywordIndex();
+
+        long start = Metrics.start();
+        FoodDatabaseLoadEvent event = new FoodDatabaseLoadEvent();
+        event.begin();
+        boolean imageOpened = openCatalogImage();
+        if (!imageOpened) {
+            loadDatabase();
+        }
+        event.end();
+        LOAD_TIME.recordSince(start);
+        if (event.shouldCommit()) {
+            event.source = imageOpened ? "image" : "json";
+            event.foods = getFoodCount();
+            event.bytesRead = new File(dataDirectory, imageOpened ? FOOD_CATALOG_IMAGE_FILE : FOOD_DB_FILE).length();
+            event.cacheHit = imageOpened;
+            event.commit();
+        }
+
+        Metrics.gauge("foodDatabase.foods", this, FoodDatabaseService::getFoodCount);
+        Metrics.gauge("foodDatabase.keywordIndex.keywords", this, db -> db.keywordIndex.keywordCount());
+        Metrics.gauge("foodDatabase.catalogImage.foods", this,
+                db -> db.catalogImage == null ? 0 : db.catalogImage.size());
+    }
 
-        try (FileReader reader = new FileReader(file)) {
-            StringBuilder content = new StringBuilder();
-            char[] buffer = new char[1024];
-            int bytesRead;
+    // Map the prebuilt catalog image written by saveDatabase, unless the JSON
+    // file is no longer the one saved with it
+    private boolean openCatalogImage() {
+        File image = new File(dataDirectory, FOOD_CATALOG_IMAGE_FILE);
+        if (!image.exists()) {
+            return false;
+        }
 
-            while ((bytesRead = reader.read(buffer)) != -1) {
-                content.append(buffer, 0, bytesRead);
+        try {
+            FoodCatalogImage opened = FoodCatalogImage.open(image.toPath());
+            if (!opened.isCurrentFor(new File(dataDirectory, FOOD_DB_FILE))) {
+                return false;
             }
+            catalogImage = opened;
+            imageFoods = new HashMap<>();
+            deletedImageFoods = new BitSet();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error opening food catalog image: " + e.getMessage());
+            return false;
+        }
+    }
 
-            JSONArray jsonArray = new JSONArray(content.toString());
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject foodJson = jsonArray.getJSONObject(i);
+    // Stream the food array one token at a time, building foods as they are read.
+    // Basic foods are built directly; composite foods are registered with their
+    // component references pending and resolved in a single dependency-ordered
+    // pass once every food is known.
+    private void loadDatabase() {
+        File file = new File(dataDirectory, FOOD_DB_FILE);
 
-                String id = foodJson.getString("id");
-                String name = foodJson.getString("name");
+        try (JsonStreamReader reader = JsonStreamReader.open(file.toPath())) {
+            Map<String, PendingComponents> pending = new LinkedHashMap<>();
 
-                JSONArray keywordsJson = foodJson.getJSONArray("keywords");
-                List<String> keywords = new ArrayList<>();
-                for (int j = 0; j < keywordsJson.length(); j++) {
-                    keywords.add(keywordsJson.getString(j));
-                }
+            reader.beginArray();
+            while (reader.hasNext()) {
+                readFood(reader, pending);
+            }
+            reader.endArray();
+
+            resolveComponents(pending);
+        } catch (Exception e) {
+            System.err.println("Error loading food database: " + e.getMessage());
+            createInitialDatabase();
+        }
+    }
 
-                double calories = foodJson.getDouble("caloriesPerServing");
-                boolean isComposite = foodJson.getBoolean("isComposite");
+    private void readFood(JsonStreamReader reader, Map<String, PendingComponents> pending) throws IOException {
+        String id = null;
+        String name = null;
+        List<String> keywords = new ArrayList<>();
+        double calories = 0;
+        boolean isComposite = false;
+        PendingComponents components = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "keywords":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        keywords.add(reader.nextString());
+                    }
+                    reader.endArray();
+                    break;
+                case "caloriesPerServing":
+                    calories = reader.nextDouble();
+                    break;
+                case "isComposite":
+                    isComposite = reader.nextBoolean();
+                    break;
+                case "components":
+                    components = readComponents(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
 
-                if (isComposite) {
-                    JSONArray componentsJson = foodJson.getJSONArray("components");
-                    CompositeFood compositeFood = new CompositeFood(name, keywords, new ArrayList<>());
-                    compositeFood.setId(id);
-                    foods.add(compositeFood);
+        if (id == null || name == null) {
+            throw new IOException("Food record without id or name");
+        }
 
-                    for (int j = 0; j < componentsJson.length(); j++) {
-                        JSONObject componentJson = componentsJson.getJSONObject(j);
-                        String foodId = componentJson.getString("foodId");
-                        double servings = componentJson.getDouble("servings");
+        if (isComposite) {
+            CompositeFood compositeFood = new CompositeFood(name, keywords, new ArrayList<>());
+            compositeFood.setId(id);
+            registerFood(compositeFood);
+            pending.put(id, components != null ? components : new PendingComponents());
+        } else {
+            BasicFood basicFood = new BasicFood(name, keywords, calories);
+            basicFood.setId(id);
+            registerFood(basicFood);
+        }
+    }
 
-                        componentJson.put("_tempId", foodId);
-                        componentJson.put("_tempServings", servings);
-                    }
-                } else {
-                    BasicFood basicFood = new BasicFood(name, keywords, calories);
-                    basicFood.setId(id);
-                    foods.add(basicFood);
+    private PendingComponents readComponents(JsonStreamReader reader) throws IOException {
+        PendingComponents components = new PendingComponents();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String foodId = null;
+            double servings = 0;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "foodId":
+                        foodId = reader.nextString();
+                        break;
+                    case "servings":
+                        servings = reader.nextDouble();
+                        break;
+                    default:
+                        reader.skipValue();
                 }
             }
+            reader.endObject();
 
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject foodJson = jsonArray.getJSONObject(i);
-                if (foodJson.getBoolean("isComposite")) {
-                    String id = foodJson.getString("id");
-                    Food compositeFood = getFoodById(id);
+            if (foodId == null) {
+                throw new IOException("Component without foodId");
+            }
+            components.add(foodId, servings);
+        }
+        reader.endArray();
 
-                    if (compositeFood instanceof CompositeFood) {
-                        JSONArray componentsJson = foodJson.getJSONArray("components");
-                        List<FoodComponent> components = new ArrayList<>();
+        return components;
+    }
 
-                        for (int j = 0; j < componentsJson.length(); j++) {
-                            JSONObject componentJson = componentsJson.getJSONObject(j);
-                            String foodId = componentJson.getString("_tempId");
-                            double servings = componentJson.getDouble("_tempServings");
+    // Depth-first post-order walk over the composite reference graph. Each composite
+    // is resolved exactly once, after all composites it uses. References to unknown
+    // foods and references that would close a cycle are reported and dropped.
+    private void resolveComponents(Map<String, PendingComponents> pending) {
+        Map<String, Boolean> finished = new HashMap<>(); // false while on the DFS path
+        Deque<String> path = new ArrayDeque<>();
 
-                            Food componentFood = getFoodById(foodId);
-                            if (componentFood != null) {
-                                components.add(new FoodComponent(componentFood, servings));
-                            }
+        for (String rootId : pending.keySet()) {
+            if (finished.containsKey(rootId)) {
+                continue;
+            }
+            finished.put(rootId, false);
+            path.push(rootId);
+
+            while (!path.isEmpty()) {
+                String id = path.peek();
+                PendingComponents components = pending.get(id);
+
+                if (components.next < components.size) {
+                    int index = components.next++;
+                    String componentId = components.foodIds[index];
+
+                    if (!foodsById.containsKey(componentId)) {
+                        System.err.println("Food " + id + " references unknown food " + componentId);
+                        components.dropped[index] = true;
+                    } else if (pending.containsKey(componentId)) {
+                        Boolean state = finished.get(componentId);
+                        if (state == null) {
+                            finished.put(componentId, false);
+                            path.push(componentId);
+                        } else if (!state) {
+                            System.err.println("Food " + id + " has a cyclic reference to food " + componentId);
+                            components.dropped[index] = true;
                         }
+                    }
+                    continue;
+                }
 
-                        ((CompositeFood) compositeFood).setComponents(components);
+                List<FoodComponent> resolved = new ArrayList<>(components.size);
+                for (int j = 0; j < components.size; j++) {
+                    if (!components.dropped[j]) {
+                        resolved.add(new FoodComponent(foodsById.get(components.foodIds[j]), components.servings[j]));
                     }
                 }
-            }
+                ((CompositeFood) foodsById.get(id)).setComponents(resolved);
 
-        } catch (Exception e) {
-            System.err.println("Error loading food database: " + e.getMessage());
-            createInitialDatabase();
+                finished.put(id, true);
+                path.pop();
+            }
         }
     }
 
+    // Writes food_database.json and then rebuilds the catalog image from it
     public void saveDatabase() {
-        try (FileWriter writer = new FileWriter(new File(FOOD_DB_FILE))) {
-            JSONArray jsonArray = new JSONArray();
-
-            for (Food food : foods) {
-                JSONObject foodJson = new JSONObject();
-                foodJson.put("id", food.getId());
-                foodJson.put("name", food.getName());
+        long start = Metrics.start();
+        FoodDatabaseSaveEvent event = new FoodDatabaseSaveEvent();
+        event.begin();
+        writeDatabase();
+        event.end();
+        SAVE_TIME.recordSince(start);
+        if (event.shouldCommit()) {
+            event.foods = getFoodCount();
+            event.bytesWritten = new File(dataDirectory, FOOD_DB_FILE).length()
+                    + new File(dataDirectory, FOOD_CATALOG_IMAGE_FILE).length();
+            event.commit();
+        }
+    }
 
-                JSONArray keywordsJson = new JSONArray();
-                for (String keyword : food.getKeywords()) {
-                    keywordsJson.put(keyword);
-                }
-                foodJson.put("keywords", keywordsJson);
-
-                foodJson.put("caloriesPerServing", food.getCaloriesPerServing());
-                foodJson.put("isComposite", food.isComposite());
-
-                if (food.isComposite() && food instanceof CompositeFood) {
-                    JSONArray componentsJson = new JSONArray();
-                    for (FoodComponent component : ((CompositeFood) food).getComponents()) {
-                        JSONObject componentJson = new JSONObject();
-                        componentJson.put("foodId", component.getFood().getId());
-                        componentJson.put("servings", component.getServings());
-                        componentsJson.put(componentJson);
+    // Streams both files from the catalog image and the foods added or decoded
+    // since, so image foods that were never used are not decoded to be saved
+    private void writeDatabase() {
+        FoodCatalogImage.Contents contents = new FoodCatalogImage.Contents(catalogImage);
+        if (catalogImage != null) {
+            for (int i = 0; i < catalogImage.size(); i++) {
+                if (!deletedImageFoods.get(i)) {
+                    Food decoded = imageFoods.get(i);
+                    if (decoded != null) {
+                        contents.addFood(decoded, i);
+                    } else {
+                        contents.addCopy(i);
                     }
-                    foodJson.put("components", componentsJson);
                 }
-
-                jsonArray.put(foodJson);
             }
+        }
+        for (Food food : foods) {
+            contents.addFood(food, -1);
+        }
 
-            writer.write(jsonArray.toString(4));
+        File jsonFile = new File(dataDirectory, FOOD_DB_FILE);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(jsonFile), WRITE_BUFFER)) {
+            writer.write("[");
+            for (int i = 0; i < contents.size(); i++) {
+                writer.write(i == 0 ? "\n    " : ",\n    ");
+                writer.write(foodJson(contents, i).toString(4).replace("\n", "\n    "));
+            }
+            writer.write(contents.size() == 0 ? "]" : "\n]");
         } catch (IOException e) {
             System.err.println("Error saving food database: " + e.getMessage());
+            return;
+        }
+
+        // The mapped image stays valid: the new one is renamed over it
+        try {
+            FoodCatalogImage.write(new File(dataDirectory, FOOD_CATALOG_IMAGE_FILE).toPath(), contents,
+                    jsonFile.length(), jsonFile.lastModified());
+        } catch (IOException e) {
+            System.err.println("Error writing food catalog image: " + e.getMessage());
         }
     }
 
+    private static JSONObject foodJson(FoodCatalogImage.Contents contents, int position) {
+        JSONObject foodJson = new JSONObject();
+        foodJson.put("id", contents.getId(position));
+        foodJson.put("name", contents.getName(position));
+
+        JSONArray keywordsJson = new JSONArray();
+        for (String keyword : contents.getKeywords(position)) {
+            keywordsJson.put(keyword);
+        }
+        foodJson.put("keywords", keywordsJson);
+
+        foodJson.put("caloriesPerServing", contents.getCaloriesPerServing(position));
+        foodJson.put("isComposite", contents.isComposite(position));
+
+        if (contents.isComposite(position)) {
+            JSONArray componentsJson = new JSONArray();
+            for (int c = 0; c < contents.getComponentCount(position); c++) {
+                JSONObject componentJson = new JSONObject();
+                componentJson.put("foodId", contents.getComponentId(position, c));
+                componentJson.put("servings", contents.getComponentServings(position, c));
+                componentsJson.put(componentJson);
+            }
+            foodJson.put("components", componentsJson);
+        }
+        return foodJson;
+    }
+
     public Food addBasicFood(String name, List<String> keywords, double caloriesPerServing) {
+        long start = Metrics.start();
         Food food = new BasicFood(name, keywords, caloriesPerServing);
-        foods.add(food);
+        registerFood(food);
+        ADD_TIME.recordSince(start);
         return food;
     }
 
     public Food addCompositeFood(String name, List<String> keywords, List<FoodComponent> components) {
+        long start = Metrics.start();
         Food food = new CompositeFood(name, keywords, components);
-        foods.add(food);
+        registerFood(food);
+        ADD_TIME.recordSince(start);
         return food;
     }
 
     public List<Food> getAllFoods() {
-        return new ArrayList<>(foods);
+        List<Food> result = new ArrayList<>();
+        if (catalogImage != null) {
+            for (int i = 0; i < catalogImage.size(); i++) {
+                if (!deletedImageFoods.get(i)) {
+                    result.add(imageFood(i));
+                }
+            }
+        }
+        result.addAll(foods);
+        return result;
+    }
+
+    // Number of foods, without decoding any from the catalog image
+    public int getFoodCount() {
+        int count = foods.size();
+        if (catalogImage != null) {
+            count += catalogImage.size() - deletedImageFoods.cardinality();
+        }
+        return count;
     }
 
     public Food getFoodById(String id) {
-        for (Food food : foods) {
-            if (food.getId().equals(id)) {
-                return food;
+        long start = Metrics.start();
+        Food food = foodsById.get(id);
+        if (food == null && catalogImage != null) {
+            int index = catalogImage.findById(id);
+            if (index >= 0 && !deletedImageFoods.get(index)) {
+                food = imageFood(index);
             }
         }
-        return null;
+        LOOKUP_TIME.recordSince(start);
+        return food;
     }
 
     public Food getFoodByName(String name) {
-        for (Food food : foods) {
-            if (food.getName().equalsIgnoreCase(name)) {
-                return food;
+        if (name == null) {
+            return null;
+        }
+        if (catalogImage != null) {
+            // Foods sharing a name are chained in the image; skip deleted ones
+            int index = catalogImage.findByName(name);
+            while (index >= 0 && deletedImageFoods.get(index)) {
+                index = catalogImage.findNextByName(index);
+            }
+            if (index >= 0) {
+                return imageFood(index);
             }
         }
-        return null;
+        return foodsByName.get(nameKey(name));
     }
 
     public List<Food> searchFoodsByAllKeywords(List<String> keywords) {
-        return foods.stream()
-                .filter(food -> food.matchesAllKeywords(keywords))
-                .collect(Collectors.toList());
+        long start = Metrics.start();
+        KeywordSearchEvent event = new KeywordSearchEvent();
+        long decoded = decodedImageFoods;
+        event.begin();
+        List<Food> result = matchAllKeywords(keywords);
+        SEARCH_ALL_TIME.recordSince(start);
+        SEARCH_RESULTS.add(result.size());
+        commitSearch(event, "all", keywords, result, decoded);
+        return result;
     }
 
     public List<Food> searchFoodsByAnyKeyword(List<String> keywords) {
-        return foods.stream()
-                .filter(food -> food.matchesAnyKeyword(keywords))
-                .collect(Collectors.toList());
+        long start = Metrics.start();
+        KeywordSearchEvent event = new KeywordSearchEvent();
+        long decoded = decodedImageFoods;
+        event.begin();
+        List<Food> result = matchAnyKeyword(keywords);
+        SEARCH_ANY_TIME.recordSince(start);
+        SEARCH_RESULTS.add(result.size());
+        commitSearch(event, "any", keywords, result, decoded);
+        return result;
+    }
+
+    // decodedBefore is decodedImageFoods when the search started
+    private void commitSearch(KeywordSearchEvent event, String match, List<String> keywords,
+                              List<Food> result, long decodedBefore) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.match = match;
+            event.keywords = String.join(",", keywords);
+            event.results = result.size();
+            event.decodedFoods = (int) (decodedImageFoods - decodedBefore);
+            event.cacheHit = event.decodedFoods == 0;
+            event.commit();
+        }
     }
 
     public boolean deleteFood(String id) {
-        return foods.removeIf(food -> food.getId().equals(id));
+        long start = Metrics.start();
+        boolean deleted = removeFood(id);
+        DELETE_TIME.recordSince(start);
+        return deleted;
+    }
+
+    private List<Food> matchAllKeywords(List<String> keywords) {
+        if (catalogImage == null) {
+            return keywordIndex.matchAll(keywords);
+        }
+        if (keywords.isEmpty()) {
+            return getAllFoods();
+        }
+
+        // Intersect the image's sorted posting lists, rarest first
+        List<int[]> matched = new ArrayList<>(keywords.size());
+        for (String keyword : keywords) {
+            matched.add(catalogImage.getPostings(keyword));
+        }
+        matched.sort((a, b) -> Integer.compare(a.length, b.length));
+        int[] result = matched.get(0);
+        for (int i = 1; i < matched.size() && result.length > 0; i++) {
+            result = intersect(result, matched.get(i));
+        }
+
+        List<Food> foodsFound = imageFoods(result);
+        foodsFound.addAll(keywordIndex.matchAll(keywords));
+        return foodsFound;
+    }
+
+    private List<Food> matchAnyKeyword(List<String> keywords) {
+        if (catalogImage == null) {
+            return keywordIndex.matchAny(keywords);
+        }
+
+        BitSet union = new BitSet();
+        for (String keyword : keywords) {
+            for (int index : catalogImage.getPostings(keyword)) {
+                union.set(index);
+            }
+        }
+
+        List<Food> foodsFound = imageFoods(union.stream().toArray());
+        foodsFound.addAll(keywordIndex.matchAny(keywords));
+        return foodsFound;
+    }
+
+    private boolean removeFood(String id) {
+        Food food = foodsById.remove(id);
+        if (food == null) {
+            if (catalogImage != null) {
+                int index = catalogImage.findById(id);
+                if (index >= 0 && !deletedImageFoods.get(index)) {
+                    deletedImageFoods.set(index);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        foods.remove(food);
+        keywordIndex.remove(food);
+
+        // Another food with the same name (if any) takes over the name slot
+        String key = nameKey(food.getName());
+        if (foodsByName.get(key) == food) {
+            foodsByName.remove(key);
+            for (Food other : foods) {
+                if (nameKey(other.getName()).equals(key)) {
+                    foodsByName.put(key, other);
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Decode a food from the catalog image once; later calls return the same object
+    private Food imageFood(int index) {
+        Food food = imageFoods.get(index);
+        if (food != null) {
+            return food;
+        }
+
+        String name = catalogImage.getName(index);
+        List<String> keywords = catalogImage.getKeywords(index);
+        if (catalogImage.isComposite(index)) {
+            // Components are decoded first; the image builder guarantees no cycles
+            List<FoodComponent> components = new ArrayList<>(catalogImage.getComponentCount(index));
+            for (int c = 0; c < catalogImage.getComponentCount(index); c++) {
+                components.add(new FoodComponent(imageFood(catalogImage.getComponentFood(index, c)),
+                        catalogImage.getComponentServings(index, c)));
+            }
+            food = new CompositeFood(name, keywords, components);
+        } else {
+            food = new BasicFood(name, keywords, catalogImage.getCaloriesPerServing(index));
+        }
+        food.setId(catalogImage.getId(index));
+        imageFoods.put(index, food);
+        decodedImageFoods++;
+        return food;
+    }
+
+    private List<Food> imageFoods(int[] indexes) {
+        List<Food> result = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            if (!deletedImageFoods.get(index)) {
+                result.add(imageFood(index));
+            }
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    // Add a food to the list and to the lookup indexes
+    private void registerFood(Food food) {
+        foods.add(food);
+        foodsById.put(food.getId(), food);
+        // First food registered under a name wins, matching the old list scan
+        foodsByName.putIfAbsent(nameKey(food.getName()), food);
+        keywordIndex.add(food);
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    // Component references of a composite food read from file, not yet resolved.
+    // The arrays grow by doubling; only the first size entries are used.
+    private static class PendingComponents {
+        private String[] foodIds = new String[4];
+        private double[] servings = new double[4];
+        private boolean[] dropped = new boolean[4];
+        private int size;
+        private int next;
+
+        void add(String foodId, double serving) {
+            if (size == foodIds.length) {
+                foodIds = Arrays.copyOf(foodIds, size * 2);
+                servings = Arrays.copyOf(servings, size * 2);
+                dropped = Arrays.copyOf(dropped, size * 2);
+            }
+            foodIds[size] = foodId;
+            servings[size] = serving;
+            size++;
+        }
     }
 }
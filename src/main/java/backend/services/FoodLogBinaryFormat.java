@@ -0,0 +1,270 @@
+package backend.services;
+
+import backend.models.Id;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Compact columnar snapshot format for the food log.
+//
+// File layout (big-endian):
+//   int magic 'YDLG', int version, int headerLength, header, int headerCrc
+//   header: int blockEntries, int entryCount, int blockCount,
+//           food id dictionary, meal type dictionary, non-UUID entry ids
+//           (dictionaries are int count + length-prefixed UTF-8 strings)
+//   blocks: int n, then columns of n values each -
+//           long idHigh, long idLow, int epochDay, long nanoOfDay,
+//           short mealCode, int foodOrdinal, double servings - then int crc
+//
+// Entry ids that are UUIDs are stored as two longs; anything else is kept as
+// a string in the header. Blocks are read through memory-mapped regions.
+final class FoodLogBinaryFormat {
+    private static final int MAGIC = 0x5944_4C47; // "YDLG"
+    private static final int VERSION = 1;
+    private static final int BLOCK_ENTRIES = 4096;
+    private static final int BYTES_PER_ENTRY = 8 + 8 + 4 + 8 + 2 + 4 + 8;
+
+    private FoodLogBinaryFormat() {
+    }
+
+    static boolean isBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            return channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    // Writes to a temp file and atomically renames it into place
+    static void write(Path path, List<LogRow> rows) throws IOException {
+        Map<String, Integer> foodOrdinals = new HashMap<>();
+        List<String> foodIds = new ArrayList<>();
+        Map<String, Integer> mealCodes = new HashMap<>();
+        List<String> mealTypes = new ArrayList<>();
+        Map<Integer, String> otherIds = new HashMap<>();
+
+        for (int i = 0; i < rows.size(); i++) {
+            LogRow row = rows.get(i);
+            if (!foodOrdinals.containsKey(row.foodId)) {
+                foodOrdinals.put(row.foodId, foodIds.size());
+                foodIds.add(row.foodId);
+            }
+            if (!mealCodes.containsKey(row.mealType)) {
+                if (mealTypes.size() > 0xFFFF) {
+                    throw new IOException("Too many distinct meal types");
+                }
+                mealCodes.put(row.mealType, mealTypes.size());
+                mealTypes.add(row.mealType);
+            }
+            if (Id.parse(row.id) == null) {
+                otherIds.put(i, row.id);
+            }
+        }
+
+        int blockCount = (rows.size() + BLOCK_ENTRIES - 1) / BLOCK_ENTRIES;
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(BLOCK_ENTRIES);
+        header.writeInt(rows.size());
+        header.writeInt(blockCount);
+        writeStrings(header, foodIds);
+        writeStrings(header, mealTypes);
+        header.writeInt(otherIds.size());
+        for (Map.Entry<Integer, String> other : otherIds.entrySet()) {
+            header.writeInt(other.getKey());
+            writeString(header, other.getValue());
+        }
+        header.flush();
+        byte[] headerBody = headerBytes.toByteArray();
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer prefix = ByteBuffer.allocate(12 + headerBody.length + 4);
+            prefix.putInt(MAGIC).putInt(VERSION).putInt(headerBody.length).put(headerBody);
+            prefix.putInt(crc(headerBody));
+            prefix.flip();
+            writeFully(channel, prefix);
+
+            ByteBuffer block = ByteBuffer.allocate(4 + BLOCK_ENTRIES * BYTES_PER_ENTRY + 4);
+            for (int b = 0; b < blockCount; b++) {
+                int start = b * BLOCK_ENTRIES;
+                int n = Math.min(BLOCK_ENTRIES, rows.size() - start);
+
+                Id[] ids = new Id[n];
+                for (int i = 0; i < n; i++) {
+                    ids[i] = Id.parse(rows.get(start + i).id);
+                }
+
+                block.clear();
+                block.putInt(n);
+                for (int i = 0; i < n; i++) {
+                    block.putLong(ids[i] == null ? 0 : ids[i].getHigh());
+                }
+                for (int i = 0; i < n; i++) {
+                    block.putLong(ids[i] == null ? 0 : ids[i].getLow());
+                }
+                for (int i = 0; i < n; i++) {
+                    block.putInt((int) rows.get(start + i).epochDay);
+                }
+                for (int i = 0; i < n; i++) {
+                    block.putLong(rows.get(start + i).nanoOfDay);
+                }
+                for (int i = 0; i < n; i++) {
+                    block.putShort((short) (int) mealCodes.get(rows.get(start + i).mealType));
+                }
+                for (int i = 0; i < n; i++) {
+                    block.putInt(foodOrdinals.get(rows.get(start + i).foodId));
+                }
+                for (int i = 0; i < n; i++) {
+                    block.putDouble(rows.get(start + i).servings);
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(block.array(), 0, block.position());
+                block.putInt((int) crc.getValue());
+                block.flip();
+                writeFully(channel, block);
+            }
+            channel.force(true);
+        }
+
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static void read(Path path, Consumer<LogRow> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer prefix = channel.map(FileChannel.MapMode.READ_ONLY, 0, 12);
+            if (prefix.getInt(0) != MAGIC) {
+                throw new IOException("Not a binary food log");
+            }
+            if (prefix.getInt(4) != VERSION) {
+                throw new IOException("Unsupported binary food log version " + prefix.getInt(4));
+            }
+            int headerLength = prefix.getInt(8);
+            if (headerLength < 0 || 12L + headerLength + 4 > channel.size()) {
+                throw new IOException("Binary food log header is truncated or damaged");
+            }
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 12, headerLength + 4L);
+            byte[] headerBody = new byte[headerLength];
+            header.get(headerBody);
+            if (header.getInt() != crc(headerBody)) {
+                throw new IOException("Binary food log header checksum mismatch");
+            }
+
+            ByteBuffer body = ByteBuffer.wrap(headerBody);
+            int blockEntries = body.getInt();
+            int entryCount = body.getInt();
+            int blockCount = body.getInt();
+            String[] foodIds = readStrings(body);
+            String[] mealTypes = readStrings(body);
+            Map<Integer, String> otherIds = new HashMap<>();
+            int otherCount = body.getInt();
+            for (int i = 0; i < otherCount; i++) {
+                int index = body.getInt();
+                otherIds.put(index, readString(body));
+            }
+
+            long position = 12L + headerLength + 4;
+            int entryIndex = 0;
+            for (int b = 0; b < blockCount; b++) {
+                ByteBuffer count = ByteBuffer.allocate(4);
+                channel.read(count, position);
+                int n = count.getInt(0);
+                long blockSize = 4L + (long) n * BYTES_PER_ENTRY;
+                // A damaged count would otherwise map past the end of the file
+                if (n <= 0 || n > blockEntries || position + blockSize + 4 > channel.size()) {
+                    throw new IOException("Binary food log block " + b + " is truncated or damaged");
+                }
+
+                MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position, blockSize + 4);
+                CRC32 crc = new CRC32();
+                ByteBuffer checked = block.duplicate();
+                checked.limit((int) blockSize);
+                crc.update(checked);
+                if (block.getInt((int) blockSize) != (int) crc.getValue()) {
+                    throw new IOException("Binary food log block " + b + " checksum mismatch");
+                }
+
+                int idLow = 4 + 8 * n;
+                int days = idLow + 8 * n;
+                int times = days + 4 * n;
+                int meals = times + 8 * n;
+                int foods = meals + 2 * n;
+                int servings = foods + 4 * n;
+                for (int i = 0; i < n; i++, entryIndex++) {
+                    String id = otherIds.get(entryIndex);
+                    if (id == null) {
+                        id = Id.toString(block.getLong(4 + 8 * i), block.getLong(idLow + 8 * i));
+                    }
+                    consumer.accept(new LogRow(id,
+                            block.getInt(days + 4 * i),
+                            block.getLong(times + 8 * i),
+                            mealTypes[block.getShort(meals + 2 * i) & 0xFFFF],
+                            foodIds[block.getInt(foods + 4 * i)],
+                            block.getDouble(servings + 8 * i)));
+                }
+                position += blockSize + 4;
+            }
+
+            if (entryIndex != entryCount) {
+                throw new IOException("Binary food log has " + entryIndex + " entries, expected " + entryCount);
+            }
+        }
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String[] readStrings(ByteBuffer in) {
+        String[] values = new String[in.getInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readString(in);
+        }
+        return values;
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,222 @@
+package backend.services;
+
+import backend.metrics.Counter;
+import backend.metrics.LatencyHistogram;
+import backend.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+// Folds sealed journal segments into the food log snapshot on a background thread.
+// Works purely on files (old snapshot + sealed segments -> new snapshot), so it
+// never touches the live FoodLogService state and writers only pay for rotate().
+// The new snapshot is written to a temp file and atomically renamed over the old
+// one, so the snapshot on disk is always the newest complete one; segments are
+// deleted only after that rename. Replaying a segment twice is harmless because
+// journal records are per-entry upserts and deletes.
+public class FoodLogCompactor {
+    // On-disk format of the snapshot
+    public enum SnapshotFormat {
+        BINARY, // columnar blocks with checksums, see FoodLogBinaryFormat
+        JSON    // the original food_log.json array
+    }
+
+    // When to seal the active journal segment and compact
+    public static class Trigger {
+        private final long maxJournalBytes;
+        private final int maxJournalRecords;
+
+        public Trigger(long maxJournalBytes, int maxJournalRecords) {
+            this.maxJournalBytes = maxJournalBytes;
+            this.maxJournalRecords = maxJournalRecords;
+        }
+
+        public static Trigger bySize(long maxJournalBytes) {
+            return new Trigger(maxJournalBytes, Integer.MAX_VALUE);
+        }
+
+        public static Trigger byRecordCount(int maxJournalRecords) {
+            return new Trigger(Long.MAX_VALUE, maxJournalRecords);
+        }
+
+        public static Trigger never() {
+            return new Trigger(Long.MAX_VALUE, Integer.MAX_VALUE);
+        }
+
+        boolean isReached(FoodLogJournal journal) {
+            return journal.getRecordCount() >= maxJournalRecords || journal.getSize() >= maxJournalBytes;
+        }
+    }
+
+    public static final Trigger DEFAULT_TRIGGER = new Trigger(4L * 1024 * 1024, 50_000);
+
+    private static final long IDLE_SECONDS = 30;
+    private static final LatencyHistogram COMPACTION_TIME = Metrics.histogram("foodLog.compaction");
+    private static final Counter COMPACTED_SEGMENTS = Metrics.counter("foodLog.compactedSegments");
+
+    private final File snapshotFile;
+    private final File fallbackSnapshotFile;
+    private final SnapshotFormat format;
+    private final FoodLogJournal journal;
+    private final Trigger trigger;
+    private final ExecutorService executor;
+    private final AtomicBoolean scheduled;
+
+    // The snapshot is written to snapshotPath in the given format. Until one exists
+    // there, the snapshot in fallbackPath (the other format) is used as the base;
+    // it is deleted once its contents are in the new snapshot, so a service later
+    // started with the other format does not load it in place of the newer one.
+    public FoodLogCompactor(String snapshotPath, String fallbackPath, SnapshotFormat format,
+                            FoodLogJournal journal, Trigger trigger) {
+        this.snapshotFile = new File(snapshotPath);
+        this.fallbackSnapshotFile = new File(fallbackPath);
+        this.format = format;
+        this.journal = journal;
+        this.trigger = trigger;
+        this.scheduled = new AtomicBoolean();
+        // The thread exits when idle, so services that rarely compact (e.g. many
+        // resident tenants) do not each hold one
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "food-log-compactor");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+
+        // Leftover from a compaction that died before its rename
+        File tempFile = new File(snapshotPath + ".tmp");
+        if (tempFile.exists() && !tempFile.delete()) {
+            System.err.println("Could not remove stale snapshot " + tempFile.getName());
+        }
+    }
+
+    // The snapshot startup should load, or null if there is none. Should both
+    // formats exist (left by a conversion that could not delete the old one), the
+    // newer is used.
+    public File getCurrentSnapshot() {
+        if (!fallbackSnapshotFile.exists()) {
+            return snapshotFile.exists() ? snapshotFile : null;
+        }
+        if (snapshotFile.exists() && snapshotFile.lastModified() >= fallbackSnapshotFile.lastModified()) {
+            return snapshotFile;
+        }
+        return fallbackSnapshotFile;
+    }
+
+    // Read a snapshot in either format
+    static void readSnapshot(File file, Consumer<LogRow> consumer) throws IOException {
+        if (FoodLogBinaryFormat.isBinary(file.toPath())) {
+            FoodLogBinaryFormat.read(file.toPath(), consumer);
+        } else {
+            FoodLogJsonFormat.read(file.toPath(), consumer);
+        }
+    }
+
+    static void writeSnapshot(File file, SnapshotFormat format, List<LogRow> rows) throws IOException {
+        if (format == SnapshotFormat.BINARY) {
+            FoodLogBinaryFormat.write(file.toPath(), rows);
+        } else {
+            FoodLogJsonFormat.write(file.toPath(), rows);
+        }
+    }
+
+    // Called by the writer after each append
+    public void afterAppend() {
+        if (trigger.isReached(journal)) {
+            try {
+                if (journal.rotate()) {
+                    schedule();
+                }
+            } catch (IOException e) {
+                System.err.println("Error rotating food log journal: " + e.getMessage());
+            }
+        }
+    }
+
+    // Seal the active segment and compact everything now, waiting for the result
+    public void compactNow() {
+        try {
+            journal.rotate();
+            executor.submit(this::compactSealedSegments).get();
+        } catch (Exception e) {
+            System.err.println("Error compacting food log: " + e.getMessage());
+        }
+    }
+
+    // Wait for a running compaction to finish; segments not yet compacted are
+    // replayed on next start. Afterwards the files may be reopened by a new service.
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        executor.submit(() -> {
+            scheduled.set(false);
+            compactSealedSegments();
+        });
+    }
+
+    private void compactSealedSegments() {
+        List<File> segments = journal.getSealedSegments();
+        File base = getCurrentSnapshot();
+        if (segments.isEmpty() && (base == null || base == snapshotFile) && !fallbackSnapshotFile.exists()) {
+            return;
+        }
+
+        long start = Metrics.start();
+        try {
+            // Rotation leaves forcing the sealed records to this thread
+            journal.syncSealed();
+            Map<String, LogRow> entries = new LinkedHashMap<>();
+            if (base != null) {
+                readSnapshot(base, row -> entries.put(row.id, row));
+            }
+            for (File segment : segments) {
+                FoodLogJournal.readSegment(segment, record -> {
+                    String id = record.getString("id");
+                    if ("delete".equals(record.optString("op"))) {
+                        entries.remove(id);
+                    } else {
+                        entries.put(id, LogRow.fromJson(record));
+                    }
+                });
+            }
+
+            writeSnapshot(snapshotFile, format, new ArrayList<>(entries.values()));
+
+            // The old format's snapshot is now stale; its rows are in the new one
+            if (fallbackSnapshotFile.exists() && !fallbackSnapshotFile.delete()) {
+                System.err.println("Could not remove converted snapshot " + fallbackSnapshotFile.getName());
+            }
+            for (File segment : segments) {
+                if (!segment.delete()) {
+                    System.err.println("Could not remove compacted journal segment " + segment.getName());
+                }
+            }
+            COMPACTION_TIME.recordSince(start);
+            COMPACTED_SEGMENTS.add(segments.size());
+        } catch (Exception e) {
+            System.err.println("Error compacting food log: " + e.getMessage());
+        }
+    }
+}
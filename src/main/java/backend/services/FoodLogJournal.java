@@ -0,0 +1,402 @@
+package backend.services;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Append-only write-ahead journal of food log mutations.
+// Each record is one compact JSON object on its own line. Records go to the active
+// segment (the journal path itself); rotate() seals it as "<path>.<n>" so that
+// FoodLogCompactor can fold sealed segments into the snapshot in the background.
+// On startup sealed segments and then the active one are replayed over the last
+// snapshot; a final record without its trailing newline (torn write) is discarded
+// and cut off so later appends start on a clean line.
+// Writes, syncs and rotation hold the journal's lock, so several writers may share
+// a journal. It is a ReentrantLock rather than a monitor, as the server's virtual
+// threads would otherwise pin their carrier thread for the length of each write and fsync.
+// Writers that must journal in the order of their own locks enqueue() records while
+// holding them, which only copies the record into a buffer under a short lock of
+// its own, and flush() once they have let go: one flush writes (and, under
+// EVERY_WRITE, forces) every record queued so far, so concurrent writers share
+// the write and the fsync. append() does both at once.
+// Rotation does not touch the file system beyond the write and rename: the active
+// segment's size is kept in memory, and a sealed segment's unforced records are
+// forced later by syncSealed (the compactor does so before reading it) or sync.
+public class FoodLogJournal {
+    // How appended records are forced to disk
+    public enum SyncPolicy {
+        EVERY_WRITE, // fsync after every record
+        BATCHED,     // fsync every BATCH_SIZE records and on sync()
+        NONE         // leave it to the OS; sync() still forces
+    }
+
+    private static final int BATCH_SIZE = 64;
+    private static final int READ_BUFFER = 64 * 1024;
+
+    private final File file;
+    private final SyncPolicy syncPolicy;
+    private FileChannel channel;
+    private int unsyncedRecords;
+    private long unsyncedBytes;
+    private int recordCount;
+    // Bytes in the active segment
+    private long size;
+    // Number the next sealed segment gets; 0 until the first rotation looks it up
+    private long nextSegment;
+    // Sealed segments holding records that were not forced before sealing
+    private final List<File> unforcedSegments;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Records enqueued but not yet written, guarded by queueLock. They are only
+    // taken while holding lock, so a flush that finds none waits for the one
+    // writing them.
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private byte[] queued = new byte[4096];
+    private int queuedBytes;
+    private int queuedRecords;
+
+    public FoodLogJournal(String path, SyncPolicy syncPolicy) {
+        this.file = new File(path);
+        this.syncPolicy = syncPolicy;
+        this.size = file.length();
+        this.unforcedSegments = new ArrayList<>();
+    }
+
+    // Feed every complete record of every segment to the handler, in write order
+    public void replay(Consumer<JSONObject> handler) throws IOException {
+        lock.lock();
+        try {
+            for (File segment : getSealedSegments()) {
+                readSegment(segment, handler);
+            }
+            recordCount = file.exists() ? readSegment(file, handler) : 0;
+            size = file.length();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns the number of records read
+    static int readSegment(File segment, Consumer<JSONObject> handler) throws IOException {
+        int records = 0;
+        long goodLength = 0;
+        long offset = 0;
+        byte[] buffer = new byte[READ_BUFFER];
+        // Start of a record that runs past the end of the buffer
+        ByteArrayOutputStream partial = new ByteArrayOutputStream(256);
+
+        try (InputStream in = new FileInputStream(segment)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                int lineStart = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+
+                    String text;
+                    if (partial.size() > 0) {
+                        partial.write(buffer, lineStart, i - lineStart);
+                        text = partial.toString(StandardCharsets.UTF_8);
+                        partial.reset();
+                    } else {
+                        text = new String(buffer, lineStart, i - lineStart, StandardCharsets.UTF_8);
+                    }
+                    lineStart = i + 1;
+                    goodLength = offset + lineStart;
+                    if (text.isBlank()) {
+                        continue;
+                    }
+
+                    // A record the handler cannot apply (a malformed date or time,
+                    // a day out of range) is skipped like one that is not JSON
+                    try {
+                        handler.accept(new JSONObject(text));
+                        records++;
+                    } catch (JSONException | DateTimeException | IllegalArgumentException e) {
+                        System.err.println("Skipping corrupt journal record in " + segment.getName() + ": " + e.getMessage());
+                    }
+                }
+                partial.write(buffer, lineStart, read - lineStart);
+                offset += read;
+            }
+        }
+
+        if (goodLength < offset) {
+            System.err.println("Discarding torn journal record in " + segment.getName()
+                    + " (" + (offset - goodLength) + " bytes)");
+            try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+                raf.setLength(goodLength);
+            }
+        }
+        return records;
+    }
+
+    // Write the record, as enqueue and flush
+    public void append(JSONObject record) throws IOException {
+        enqueue(record);
+        flush();
+    }
+
+    // Queue the record behind those already queued, without any I/O
+    public void enqueue(JSONObject record) {
+        byte[] bytes = (record.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        queueLock.lock();
+        try {
+            if (queuedBytes + bytes.length > queued.length) {
+                queued = Arrays.copyOf(queued, Math.max(queued.length * 2, queuedBytes + bytes.length));
+            }
+            System.arraycopy(bytes, 0, queued, queuedBytes, bytes.length);
+            queuedBytes += bytes.length;
+            queuedRecords++;
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    // Write every queued record, forcing it as the sync policy asks. On return the
+    // records this thread enqueued are written, by this call or one before it.
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            writeQueued();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Caller holds the lock
+    private void writeQueued() throws IOException {
+        ByteBuffer buffer;
+        int records;
+        queueLock.lock();
+        try {
+            if (queuedRecords == 0) {
+                return;
+            }
+            buffer = ByteBuffer.wrap(Arrays.copyOf(queued, queuedBytes));
+            records = queuedRecords;
+            queuedBytes = 0;
+            queuedRecords = 0;
+        } finally {
+            queueLock.unlock();
+        }
+
+        if (channel == null) {
+            // The directory of a new log is only created once it is written to
+            File directory = file.getAbsoluteFile().getParentFile();
+            if (directory != null) {
+                Files.createDirectories(directory.toPath());
+            }
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+
+        unsyncedBytes += buffer.remaining();
+        size += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        recordCount += records;
+        unsyncedRecords += records;
+
+        if (syncPolicy == SyncPolicy.EVERY_WRITE
+                || (syncPolicy == SyncPolicy.BATCHED && unsyncedRecords >= BATCH_SIZE)) {
+            forceActive();
+        }
+    }
+
+    // Force everything appended so far to disk, sealed segments included
+    public void sync() throws IOException {
+        lock.lock();
+        try {
+            writeQueued();
+            forceActive();
+        } finally {
+            lock.unlock();
+        }
+        syncSealed();
+    }
+
+    // Caller holds the lock
+    private void forceActive() throws IOException {
+        if (channel != null && unsyncedRecords > 0) {
+            channel.force(false);
+            unsyncedRecords = 0;
+            unsyncedBytes = 0;
+        }
+    }
+
+    // Force the records of sealed segments that were not forced before sealing.
+    // Runs without holding the journal lock, so appends go on meanwhile.
+    public void syncSealed() throws IOException {
+        List<File> segments;
+        lock.lock();
+        try {
+            if (unforcedSegments.isEmpty()) {
+                return;
+            }
+            segments = new ArrayList<>(unforcedSegments);
+        } finally {
+            lock.unlock();
+        }
+
+        for (File segment : segments) {
+            try (FileChannel sealed = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+                sealed.force(false);
+            } catch (NoSuchFileException e) {
+                // Already compacted into a snapshot, which is forced when written
+            }
+        }
+
+        lock.lock();
+        try {
+            unforcedSegments.removeAll(segments);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Seal the active segment; later appends start a new one. Its records are
+    // not forced here, see syncSealed. Returns false if there was nothing to seal.
+    public boolean rotate() throws IOException {
+        lock.lock();
+        try {
+            writeQueued();
+            boolean unforced = unsyncedRecords > 0;
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                unsyncedRecords = 0;
+                unsyncedBytes = 0;
+            }
+            if (size == 0) {
+                return false;
+            }
+
+            if (nextSegment == 0) {
+                List<File> sealed = getSealedSegments();
+                nextSegment = sealed.isEmpty() ? 1 : segmentNumber(sealed.get(sealed.size() - 1)) + 1;
+            }
+            File target = new File(file.getPath() + "." + nextSegment);
+            if (!file.renameTo(target)) {
+                throw new IOException("Could not seal journal segment " + target.getName());
+            }
+            nextSegment++;
+            if (unforced) {
+                unforcedSegments.add(target);
+            }
+            recordCount = 0;
+            size = 0;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Sealed segments, oldest first
+    public List<File> getSealedSegments() {
+        List<File> segments = new ArrayList<>();
+        File dir = file.getAbsoluteFile().getParentFile();
+        File[] candidates = dir == null ? null : dir.listFiles();
+        if (candidates == null) {
+            return segments;
+        }
+
+        for (File candidate : candidates) {
+            if (segmentNumber(candidate) > 0) {
+                segments.add(candidate);
+            }
+        }
+        segments.sort((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)));
+        return segments;
+    }
+
+    private long segmentNumber(File candidate) {
+        String prefix = file.getName() + ".";
+        String name = candidate.getName();
+        if (!name.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            writeQueued();
+            if (channel != null) {
+                forceActive();
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        syncSealed();
+    }
+
+    public SyncPolicy getSyncPolicy() {
+        return syncPolicy;
+    }
+
+    // Records in the active segment
+    public int getRecordCount() {
+        lock.lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Records and bytes appended since the last fsync
+    public int getUnsyncedRecords() {
+        lock.lock();
+        try {
+            return unsyncedRecords;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getUnsyncedBytes() {
+        lock.lock();
+        try {
+            return unsyncedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Size of the active segment in bytes
+    public long getSize() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
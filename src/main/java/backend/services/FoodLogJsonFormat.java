@@ -0,0 +1,97 @@
+package backend.services;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+// The food_log.json schema: an array of
+// {"id", "date", "time", "mealType", "foodId", "servings"} objects.
+// Kept for import/export and for logs written before the binary snapshot existed.
+final class FoodLogJsonFormat {
+    private FoodLogJsonFormat() {
+    }
+
+    static void read(Path path, Consumer<LogRow> consumer) throws IOException {
+        try (JsonStreamReader reader = JsonStreamReader.open(path)) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                consumer.accept(readRow(reader));
+            }
+            reader.endArray();
+        }
+    }
+
+    private static LogRow readRow(JsonStreamReader reader) throws IOException {
+        String id = null;
+        LocalDate date = null;
+        LocalTime time = null;
+        String mealType = null;
+        String foodId = null;
+        double servings = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "date":
+                    date = LocalDate.parse(reader.nextString());
+                    break;
+                case "time":
+                    time = LocalTime.parse(reader.nextString());
+                    break;
+                case "mealType":
+                    mealType = reader.nextString();
+                    break;
+                case "foodId":
+                    foodId = reader.nextString();
+                    break;
+                case "servings":
+                    servings = reader.nextDouble();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id == null || date == null || time == null || mealType == null || foodId == null) {
+            throw new IOException("Incomplete food log entry " + id);
+        }
+        return new LogRow(id, date.toEpochDay(), time.toNanoOfDay(), mealType, foodId, servings);
+    }
+
+    // Streams one entry per line; writes to a temp file and atomically renames it into place
+    static void write(Path path, Collection<LogRow> rows) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel),
+                    StandardCharsets.UTF_8), 64 * 1024);
+            writer.write("[");
+            boolean first = true;
+            for (LogRow row : rows) {
+                writer.write(first ? "\n    " : ",\n    ");
+                writer.write(row.toJson().toString());
+                first = false;
+            }
+            writer.write("\n]\n");
+            writer.flush();
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
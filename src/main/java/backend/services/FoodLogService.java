@@ -1,281 +1,1093 @@
 package backend.services;
 
+import backend.metrics.CalorieSummaryEvent;
+import backend.metrics.FoodLogLoadEvent;
+import backend.metrics.FoodLogSaveEvent;
+import backend.metrics.LatencyHistogram;
+import backend.metrics.Metrics;
+import backend.models.CalorieRangeSummary;
 import backend.models.Food;
 import backend.models.FoodLogEntry;
+import backend.models.Id;
+import backend.models.SymbolTable;
 import backend.models.UserProfile;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
-import java.util.stream.Collectors;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
+// Safe for concurrent use. Entries are partitioned by day into stripes, each with
+// its own store, date index and lock, so writers to different days do not contend.
+// Readers run optimistically without locking and only fall back to a stripe's read
+// lock if a writer changed it meanwhile. Queries spanning days combine per-stripe
+// results, so they are consistent per stripe rather than across the whole log.
+// Range summaries instead read one CalorieRangeIndex of day totals for the whole
+// log, which writers update after changing a day.
+// Undo and redo lock the stripes of the days the reverted change touched.
+// Lock order: stripes in stripe order, then the range index or the undo history,
+// then the journal.
 public class FoodLogService {
     private static final String FOOD_LOG_FILE = "food_log.json";
-    private List<FoodLogEntry> logEntries;
+    private static final String FOOD_LOG_BINARY_FILE = "food_log.bin";
+    private static final String FOOD_LOG_JOURNAL_FILE = "food_log.journal";
+    private static final String JOURNAL_PUT = "put";
+    private static final String JOURNAL_DELETE = "delete";
+    // Power of two, at least twice the processor count so that concurrent writers
+    // to different days rarely share a stripe
+    private static final int STRIPE_COUNT = Math.min(64,
+            Integer.highestOneBit(Math.max(8, Runtime.getRuntime().availableProcessors() * 2) * 2 - 1));
+    private static final LatencyHistogram LOAD_TIME = Metrics.histogram("foodLog.load");
+    private static final LatencyHistogram SAVE_TIME = Metrics.histogram("foodLog.save");
+    private static final LatencyHistogram JOURNAL_APPEND_TIME = Metrics.histogram("foodLog.journalAppend");
+    private static final LatencyHistogram ADD_TIME = Metrics.histogram("foodLog.add");
+    private static final LatencyHistogram UPDATE_TIME = Metrics.histogram("foodLog.update");
+    private static final LatencyHistogram DELETE_TIME = Metrics.histogram("foodLog.delete");
+    private static final LatencyHistogram UNDO_TIME = Metrics.histogram("foodLog.undo");
+    private static final LatencyHistogram REDO_TIME = Metrics.histogram("foodLog.redo");
+    private static final LatencyHistogram DAY_TOTAL_TIME = Metrics.histogram("foodLog.dayTotal");
+    private static final LatencyHistogram MEAL_TOTAL_TIME = Metrics.histogram("foodLog.mealTotal");
+    private static final LatencyHistogram RANGE_SUMMARY_TIME = Metrics.histogram("foodLog.rangeSummary");
+    private static final LatencyHistogram DAILY_SUMMARY_TIME = Metrics.histogram("foodLog.dailySummary");
+    // Entries as primitive columns, split by day; FoodLogEntry objects are only
+    // created for callers
+    private final Stripe[] stripes;
+    private final CalorieRangeIndex rangeIndex;
     private FoodDatabaseService foodDatabaseService;
-    private Stack<Command> undoStack;
+    private final UndoHistory history;
+    // Every mutation is appended here and replayed over the last snapshot
+    private FoodLogJournal journal;
+    private FoodLogCompactor compactor;
     
     public FoodLogService(FoodDatabaseService foodDatabaseService) {
-        this.foodDatabaseService = foodDatabaseService;
-        this.logEntries = new ArrayList<>();
-        this.undoStack = new Stack<>();
-        loadLog();
+        this(foodDatabaseService, FoodLogJournal.SyncPolicy.BATCHED);
     }
     
-    // Load log from file
-    private void loadLog() {
-        File file = new File(FOOD_LOG_FILE);
-        if (!file.exists()) {
-            return;
+    public FoodLogService(FoodDatabaseService foodDatabaseService, FoodLogJournal.SyncPolicy syncPolicy) {
+        this(foodDatabaseService, syncPolicy, FoodLogCompactor.DEFAULT_TRIGGER);
+    }
+    
+    public FoodLogService(FoodDatabaseService foodDatabaseService, FoodLogJournal.SyncPolicy syncPolicy,
+                          FoodLogCompactor.Trigger compactionTrigger) {
+        this(foodDatabaseService, syncPolicy, compactionTrigger, FoodLogCompactor.SnapshotFormat.BINARY);
+    }
+    
+    public FoodLogService(FoodDatabaseService foodDatabaseService, FoodLogJournal.SyncPolicy syncPolicy,
+                          FoodLogCompactor.Trigger compactionTrigger,
+                          FoodLogCompactor.SnapshotFormat snapshotFormat) {
+        this(foodDatabaseService, null, syncPolicy, compactionTrigger, snapshotFormat);
+    }
+    
+    // Log files live in dataDirectory (null for the working directory).
+    // Snapshots go to food_log.bin (BINARY) or food_log.json (JSON); an existing
+    // snapshot in the other format is picked up and converted on first compaction
+    public FoodLogService(FoodDatabaseService foodDatabaseService, File dataDirectory,
+                          FoodLogJournal.SyncPolicy syncPolicy,
+                          FoodLogCompactor.Trigger compactionTrigger,
+                          FoodLogCompactor.SnapshotFormat snapshotFormat) {
+        this(foodDatabaseService, dataDirectory, syncPolicy, compactionTrigger, snapshotFormat,
+                UndoHistory.DEFAULT_DEPTH);
+    }
+    
+    // The undo history is sized once here, so callers with their own depth
+    // don't allocate the default one only to resize it
+    public FoodLogService(FoodDatabaseService foodDatabaseService, File dataDirectory,
+                          FoodLogJournal.SyncPolicy syncPolicy,
+                          FoodLogCompactor.Trigger compactionTrigger,
+                          FoodLogCompactor.SnapshotFormat snapshotFormat, int undoDepth) {
+        this.foodDatabaseService = foodDatabaseService;
+        this.rangeIndex = new CalorieRangeIndex();
+        this.stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new Stripe(i, rangeIndex);
         }
+        this.history = new UndoHistory(undoDepth);
+        this.journal = new FoodLogJournal(new File(dataDirectory, FOOD_LOG_JOURNAL_FILE).getPath(), syncPolicy);
+        boolean binary = snapshotFormat == FoodLogCompactor.SnapshotFormat.BINARY;
+        String binaryPath = new File(dataDirectory, FOOD_LOG_BINARY_FILE).getPath();
+        String jsonPath = new File(dataDirectory, FOOD_LOG_FILE).getPath();
+        this.compactor = new FoodLogCompactor(
+                binary ? binaryPath : jsonPath,
+                binary ? jsonPath : binaryPath,
+                snapshotFormat, journal, compactionTrigger);
         
-        try (FileReader reader = new FileReader(file)) {
-            StringBuilder content = new StringBuilder();
-            char[] buffer = new char[1024];
-            int bytesRead;
-            
-            while ((bytesRead = reader.read(buffer)) != -1) {
-                content.append(buffer, 0, bytesRead);
+        long start = Metrics.start();
+        FoodLogLoadEvent event = new FoodLogLoadEvent();
+        event.begin();
+        File snapshot = loadLog();
+        int journalRecords = replayJournal();
+        event.end();
+        LOAD_TIME.recordSince(start);
+        if (event.shouldCommit()) {
+            event.snapshot = snapshot == null ? "" : snapshot.getPath();
+            event.entries = entryCount();
+            event.journalRecords = journalRecords;
+            event.bytesRead = (snapshot == null ? 0 : snapshot.length()) + journal.getSize();
+            for (File segment : journal.getSealedSegments()) {
+                event.bytesRead += segment.length();
             }
-            
-            JSONArray jsonArray = new JSONArray(content.toString());
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject entryJson = jsonArray.getJSONObject(i);
-                
-                String id = entryJson.getString("id");
-                LocalDate date = LocalDate.parse(entryJson.getString("date"));
-                LocalTime time = LocalTime.parse(entryJson.getString("time"));
-                String mealType = entryJson.getString("mealType");
-                String foodId = entryJson.getString("foodId");
-                double servings = entryJson.getDouble("servings");
-                
-                Food food = foodDatabaseService.getFoodById(foodId);
+            event.commit();
+        }
+        
+        Metrics.gauge("foodLog.entries", this, FoodLogService::entryCount);
+        Metrics.gauge("foodLog.days", this, FoodLogService::dayCount);
+        Metrics.gauge("foodLog.undoDepth", this, log -> log.history.size());
+        Metrics.gauge("foodLog.journal.records", journal, FoodLogJournal::getRecordCount);
+        Metrics.gauge("foodLog.journal.bytes", journal, FoodLogJournal::getSize);
+    }
+    
+    // Stream the snapshot from file straight into the stores.
+    // Returns the snapshot file, or null if there is none.
+    private File loadLog() {
+        File file = compactor.getCurrentSnapshot();
+        if (file == null) {
+            return null;
+        }
+        
+        try {
+            FoodLogCompactor.readSnapshot(file, row -> {
+                Food food = lookupFood(row.foodId);
                 if (food != null) {
-                    FoodLogEntry entry = new FoodLogEntry(id, date, time, mealType, food, servings);
-                    logEntries.add(entry);
+                    loadRow(row, food, true);
                 }
-            }
+            });
         } catch (Exception e) {
             System.err.println("Error loading food log: " + e.getMessage());
         }
+        return file;
+    }
+    
+    // The catalog may be shared with other threads (e.g. other tenants' logs), which
+    // synchronize on it; it is locked per lookup so a long load does not hold it
+    private Food lookupFood(String id) {
+        synchronized (foodDatabaseService) {
+            return foodDatabaseService.getFoodById(id);
+        }
     }
     
-    // Save log to file
+    // Export every entry to a file in the food_log.json schema, in date order
+    public void exportJson(String path) {
+        List<LogRow> rows = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            rows.addAll(read(stripe, () -> {
+                List<LogRow> stripeRows = new ArrayList<>(stripe.store.size());
+                for (int row : stripe.store.rowsInOrder()) {
+                    stripeRows.add(stripe.store.toRow(row));
+                }
+                return stripeRows;
+            }));
+        }
+        rows.sort(Comparator.comparingLong(row -> row.epochDay));
+        
+        try {
+            FoodLogJsonFormat.write(new File(path).toPath(), rows);
+        } catch (IOException e) {
+            System.err.println("Error exporting food log: " + e.getMessage());
+        }
+    }
+    
+    // Import entries from a file in the food_log.json schema, replacing entries with
+    // the same id. Returns the number of entries imported.
+    public int importJson(String path) {
+        int[] imported = {0};
+        try {
+            FoodLogJsonFormat.read(new File(path).toPath(), row -> {
+                Food food = lookupFood(row.foodId);
+                if (food != null) {
+                    putRow(row, food, true);
+                    flushJournal();
+                    imported[0]++;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error importing food log: " + e.getMessage());
+        }
+        return imported[0];
+    }
+    
+    // Apply journaled mutations not yet compacted into the snapshot.
+    // Returns the number of records replayed.
+    private int replayJournal() {
+        int[] replayed = {0};
+        try {
+            journal.replay(record -> {
+                replayed[0]++;
+                String id = record.getString("id");
+                if (JOURNAL_DELETE.equals(record.getString("op"))) {
+                    Id parsed = Id.parse(id);
+                    Stripe stripe = findLoaded(parsed, id, null);
+                    if (stripe != null) {
+                        unindexRow(stripe, stripe.store.find(parsed, id));
+                    }
+                } else {
+                    LogRow row = LogRow.fromJson(record);
+                    Food food = lookupFood(row.foodId);
+                    if (food != null) {
+                        loadRow(row, food, false);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Error replaying food log journal: " + e.getMessage());
+        }
+        return replayed[0];
+    }
+    
+    // Fold the whole journal into a fresh snapshot, waiting for it to finish.
+    // Compaction otherwise runs in the background whenever the trigger is reached.
+    public void compactLog() {
+        compactor.compactNow();
+    }
+    
+    // Save log to file. Mutations are already in the journal, so this only has
+    // to force any records the sync policy has not flushed yet.
     public void saveLog() {
-        try (FileWriter writer = new FileWriter(new File(FOOD_LOG_FILE))) {
-            JSONArray jsonArray = new JSONArray();
-            
-            for (FoodLogEntry entry : logEntries) {
-                JSONObject entryJson = new JSONObject();
-                entryJson.put("id", entry.getId());
-                entryJson.put("date", entry.getDate().toString());
-                entryJson.put("time", entry.getTime().toString());
-                entryJson.put("mealType", entry.getMealType());
-                entryJson.put("foodId", entry.getFood().getId());
-                entryJson.put("servings", entry.getServings());
-                
-                jsonArray.put(entryJson);
-            }
-            
-            writer.write(jsonArray.toString(4)); // Pretty print with 4-space indentation
+        long start = Metrics.start();
+        FoodLogSaveEvent event = new FoodLogSaveEvent();
+        event.begin();
+        int records = journal.getUnsyncedRecords();
+        long bytes = journal.getUnsyncedBytes();
+        try {
+            journal.sync();
         } catch (IOException e) {
             System.err.println("Error saving food log: " + e.getMessage());
         }
+        SAVE_TIME.recordSince(start);
+        if (event.shouldCommit()) {
+            event.journalRecords = records;
+            event.bytesWritten = bytes;
+            event.commit();
+        }
+    }
+    
+    // Flush and release the journal and the compactor thread; the service must
+    // not be used afterwards
+    public void close() {
+        compactor.shutdown();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing food log journal: " + e.getMessage());
+        }
     }
     
     // Add a new entry to the log
     public FoodLogEntry addEntry(LocalDate date, LocalTime time, String mealType, Food food, double servings) {
+        long start = Metrics.start();
         FoodLogEntry entry = new FoodLogEntry(date, time, mealType, food, servings);
-        logEntries.add(entry);
+        Stripe stripe = stripeFor(date.toEpochDay());
         
-        // Add to undo stack
-        undoStack.push(new Command(CommandType.ADD, entry));
+        stripe.writeLock.lock();
+        try {
+            int row = stripe.store.insert(entry.getId(), date.toEpochDay(), time.toNanoOfDay(),
+                    mealType, food, servings);
+            stripe.dateIndex.add(row);
+            journalPut(stripe, row);
+            
+            // Add to undo history
+            history.recordAdd(entry.getId(), stripe.store, row);
+        } finally {
+            stripe.writeLock.unlock();
+        }
+        flushJournal();
         
+        ADD_TIME.recordSince(start);
         return entry;
     }
     
     // Delete an entry from the log
     public boolean deleteEntry(String id) {
-        FoodLogEntry entryToRemove = null;
-        for (FoodLogEntry entry : logEntries) {
-            if (entry.getId().equals(id)) {
-                entryToRemove = entry;
-                break;
-            }
-        }
-        
-        if (entryToRemove != null) {
-            logEntries.remove(entryToRemove);
-            
-            // Add to undo stack
-            undoStack.push(new Command(CommandType.DELETE, entryToRemove));
-            
-            return true;
+        long start = Metrics.start();
+        if (!removeRow(id, true)) {
+            return false;
         }
+        flushJournal();
         
-        return false;
+        DELETE_TIME.recordSince(start);
+        return true;
     }
     
     // Update an entry in the log
     public boolean updateEntry(String id, LocalDate date, LocalTime time, String mealType, Food food, double servings) {
-        for (int i = 0; i < logEntries.size(); i++) {
-            FoodLogEntry entry = logEntries.get(i);
-            if (entry.getId().equals(id)) {
-                // Save the old entry for undo
-                FoodLogEntry oldEntry = new FoodLogEntry(
-                        entry.getId(), entry.getDate(), entry.getTime(), 
-                        entry.getMealType(), entry.getFood(), entry.getServings()
-                );
-                
-                // Update the entry
-                entry.setDate(date);
-                entry.setTime(time);
-                entry.setMealType(mealType);
-                entry.setFood(food);
-                entry.setServings(servings);
+        long start = Metrics.start();
+        LogEntryStore.check(date.toEpochDay(), mealType);
+        Id parsed = Id.parse(id);
+        Stripe target = stripeFor(date.toEpochDay());
+        
+        while (true) {
+            Stripe source = locate(parsed, id);
+            if (source == null) {
+                return false;
+            }
+            
+            lock(source, target);
+            try {
+                int row = source.store.find(parsed, id);
+                if (row < 0) {
+                    continue; // Moved to another stripe or deleted meanwhile
+                }
                 
-                // Add to undo stack
-                undoStack.push(new Command(CommandType.UPDATE, oldEntry, entry));
+                // Record the fields that change for undo
+                history.recordUpdate(id, source.store, row, date.toEpochDay(), time.toNanoOfDay(),
+                        SymbolTable.MEAL_TYPES.intern(mealType), food, servings);
                 
-                return true;
+                // Update the entry, moving it between date buckets if needed
+                source.dateIndex.remove(row);
+                source.store.set(row, date.toEpochDay(), time.toNanoOfDay(), mealType, food, servings);
+                reindex(source, row, id, true);
+            } finally {
+                unlock(source, target);
             }
+            flushJournal();
+            
+            UPDATE_TIME.recordSince(start);
+            return true;
         }
-        
-        return false;
     }
     
     // Get all entries for a specific date
     public List<FoodLogEntry> getEntriesByDate(LocalDate date) {
-        return logEntries.stream()
-                .filter(entry -> entry.getDate().equals(date))
-                .collect(Collectors.toList());
+        Stripe stripe = stripeFor(date.toEpochDay());
+        return read(stripe, () -> stripe.dateIndex.getEntries(date));
     }
     
-    // Get all entries
+    // Get all entries, in date order and in insertion order within a day
     public List<FoodLogEntry> getAllEntries() {
-        return new ArrayList<>(logEntries);
+        List<FoodLogEntry> entries = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            entries.addAll(read(stripe, () -> {
+                List<FoodLogEntry> stripeEntries = new ArrayList<>(stripe.store.size());
+                for (int row : stripe.store.rowsInOrder()) {
+                    stripeEntries.add(stripe.store.toEntry(row));
+                }
+                return stripeEntries;
+            }));
+        }
+        entries.sort(Comparator.comparing(FoodLogEntry::getDate));
+        return entries;
     }
     
     // Calculate total calories consumed on a specific date
     public double calculateTotalCaloriesForDate(LocalDate date) {
-        return getEntriesByDate(date).stream()
-                .mapToDouble(FoodLogEntry::getTotalCalories)
-                .sum();
+        long start = Metrics.start();
+        SummaryTrace trace = new SummaryTrace();
+        Stripe stripe = stripeFor(date.toEpochDay());
+        repairDay(stripe, date.toEpochDay());
+        double calories = readDouble(stripe, () -> stripe.dateIndex.getCalories(date));
+        DAY_TOTAL_TIME.recordSince(start);
+        trace.commitDay("day", stripe, date);
+        return calories;
+    }
+    
+    // Calculate total calories consumed between two dates (inclusive)
+    public double calculateTotalCaloriesForRange(LocalDate startDate, LocalDate endDate) {
+        long start = Metrics.start();
+        SummaryTrace trace = new SummaryTrace();
+        double[] range = calorieRange(startDate, endDate);
+        RANGE_SUMMARY_TIME.recordSince(start);
+        trace.commit("range", startDate, endDate, (int) range[1]);
+        return range[0];
     }
     
-    // Get daily calorie summary for all logged dates
+    // Get total, min, max and average daily calories between two dates (inclusive)
+    public CalorieRangeSummary getCalorieSummaryForRange(LocalDate startDate, LocalDate endDate) {
+        long start = Metrics.start();
+        SummaryTrace trace = new SummaryTrace();
+        double[] range = calorieRange(startDate, endDate);
+        int loggedDays = (int) range[1];
+        CalorieRangeSummary summary = new CalorieRangeSummary(startDate, endDate, range[0], loggedDays,
+                loggedDays == 0 ? 0 : range[2], loggedDays == 0 ? 0 : range[3]);
+        RANGE_SUMMARY_TIME.recordSince(start);
+        trace.commit("range", startDate, endDate, loggedDays);
+        return summary;
+    }
+    
+    // Get daily calorie summary for all logged dates, in date order
     public Map<LocalDate, Double> getDailyCalorieSummary() {
-        Map<LocalDate, Double> summary = new HashMap<>();
-        
-        for (FoodLogEntry entry : logEntries) {
-            LocalDate date = entry.getDate();
-            double calories = entry.getTotalCalories();
-            
-            summary.put(date, summary.getOrDefault(date, 0.0) + calories);
+        long start = Metrics.start();
+        SummaryTrace trace = new SummaryTrace();
+        Map<LocalDate, Double> summary = new TreeMap<>();
+        for (Stripe stripe : stripes) {
+            repairAll(stripe);
+            summary.putAll(read(stripe, stripe.dateIndex::getDailyCalories));
         }
-        
+        DAILY_SUMMARY_TIME.recordSince(start);
+        trace.commit("daily", null, null, summary.size());
         return summary;
     }
     
-    // Undo the last command
+    // Undo the last change
     public boolean undo() {
-        if (undoStack.isEmpty()) {
+        long start = Metrics.start();
+        if (!revert(false)) {
             return false;
         }
+        flushJournal();
         
-        Command command = undoStack.pop();
-        
-        switch (command.getType()) {
-            case ADD:
-                logEntries.removeIf(entry -> entry.getId().equals(command.getOldEntry().getId()));
-                break;
-                
-            case DELETE:
-                logEntries.add(command.getOldEntry());
-                break;
-                
-            case UPDATE:
-                for (int i = 0; i < logEntries.size(); i++) {
-                    if (logEntries.get(i).getId().equals(command.getNewEntry().getId())) {
-                        logEntries.set(i, command.getOldEntry());
-                        break;
-                    }
-                }
-                break;
+        UNDO_TIME.recordSince(start);
+        return true;
+    }
+    
+    // Redo the last undone change; any new change clears what can be redone
+    public boolean redo() {
+        long start = Metrics.start();
+        if (!revert(true)) {
+            return false;
         }
+        flushJournal();
         
+        REDO_TIME.recordSince(start);
         return true;
     }
     
     // Get entries by meal type for a specific date
     public List<FoodLogEntry> getEntriesByMealType(LocalDate date, String mealType) {
-        return getEntriesByDate(date).stream()
-                .filter(entry -> entry.getMealType().equalsIgnoreCase(mealType))
-                .collect(Collectors.toList());
+        Stripe stripe = stripeFor(date.toEpochDay());
+        return read(stripe, () -> stripe.dateIndex.getEntries(date, mealType));
     }
     
     // Calculate total calories by meal type for a specific date
     public double calculateCaloriesByMealType(LocalDate date, String mealType) {
-        return getEntriesByMealType(date, mealType).stream()
-                .mapToDouble(FoodLogEntry::getTotalCalories)
-                .sum();
+        long start = Metrics.start();
+        SummaryTrace trace = new SummaryTrace();
+        Stripe stripe = stripeFor(date.toEpochDay());
+        repairDay(stripe, date.toEpochDay());
+        double calories = readDouble(stripe, () -> stripe.dateIndex.getCalories(date, mealType));
+        MEAL_TOTAL_TIME.recordSince(start);
+        trace.commitDay("meal", stripe, date);
+        return calories;
     }
     
-    // Clear undo stack
+    // Clear undo and redo history
     public void clearUndoStack() {
-        undoStack.clear();
+        history.clear();
     }
     
     // Check if undo is available
     public boolean canUndo() {
-        return !undoStack.isEmpty();
+        return history.canUndo();
+    }
+    
+    // Check if redo is available
+    public boolean canRedo() {
+        return history.canRedo();
     }
     
-    // Command class for undo functionality
-    private static class Command {
-        private CommandType type;
-        private FoodLogEntry oldEntry;
-        private FoodLogEntry newEntry;
+    // Number of changes kept for undo; once reached, the oldest change is dropped.
+    // Shrinking keeps the most recent changes and clears the redo history.
+    public void setUndoDepth(int depth) {
+        history.resize(depth);
+    }
+    
+    // Limit the undo history to roughly the given number of bytes
+    public void setUndoMemoryLimit(long bytes) {
+        setUndoDepth(UndoHistory.depthFor(bytes));
+    }
+    
+    public int getUndoDepth() {
+        return history.getDepth();
+    }
+    
+    // Approximate heap held by the entries, their indexes, the range tree and the undo history.
+    // Read without locking, so it may be slightly off while writers are active.
+    public long getEstimatedMemoryBytes() {
+        long bytes = (long) history.getDepth() * UndoHistory.SLOT_BYTES + rangeIndex.getMemoryBytes();
+        for (Stripe stripe : stripes) {
+            bytes += stripe.store.getMemoryBytes() + stripe.dateIndex.getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    // Rows summed again because their day's totals were stale, over the log's life
+    long getRecomputedRows() {
+        long total = 0;
+        for (Stripe stripe : stripes) {
+            total += stripe.dateIndex.getRecomputedRows();
+        }
+        return total;
+    }
+    
+    // Throws IllegalStateException unless every stripe only holds entries of its
+    // own days, each id is in one stripe, the date indexes match the stores, and
+    // the range tree (if current) holds every day's total. For tests; blocks all
+    // writers while it runs.
+    void checkConsistency() {
+        lockAll();
+        try {
+            Map<String, Integer> stripeById = new HashMap<>();
+            for (Stripe stripe : stripes) {
+                for (int row : stripe.store.rowsInOrder()) {
+                    if (stripeFor(stripe.store.getEpochDay(row)) != stripe) {
+                        throw new IllegalStateException("Entry " + stripe.store.getId(row) + " in stripe "
+                                + stripe.number + " is not on one of its days");
+                    }
+                    Integer other = stripeById.put(stripe.store.getId(row), stripe.number);
+                    if (other != null) {
+                        throw new IllegalStateException("Entry " + stripe.store.getId(row) + " is in stripes "
+                                + other + " and " + stripe.number);
+                    }
+                }
+                stripe.dateIndex.checkConsistency();
+            }
+            
+            Map<LocalDate, Double> daily = new TreeMap<>();
+            for (Stripe stripe : stripes) {
+                daily.putAll(stripe.dateIndex.getDailyCalories());
+            }
+            for (Map.Entry<LocalDate, Double> day : daily.entrySet()) {
+                double[] range = rangeIndex.query(day.getKey().toEpochDay(), day.getKey().toEpochDay());
+                if (range == null) {
+                    return;
+                }
+                if (range[1] != 1 || Math.abs(range[0] - day.getValue()) > 1e-6 * Math.max(1, day.getValue())) {
+                    throw new IllegalStateException("Range tree holds " + range[0] + " for " + day.getKey()
+                            + ", the date index " + day.getValue());
+                }
+            }
+            double[] all = rangeIndex.query(Long.MIN_VALUE / 2, Long.MAX_VALUE / 2);
+            if (all != null && all[1] != daily.size()) {
+                throw new IllegalStateException("Range tree holds " + (long) all[1] + " days, the date index "
+                        + daily.size());
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    private Stripe stripeFor(long epochDay) {
+        return stripes[(int) epochDay & (STRIPE_COUNT - 1)];
+    }
+    
+    // Stripe holding the id, or null. Probes every stripe without locking; callers
+    // re-check after locking, as the entry may have moved or gone meanwhile.
+    private Stripe locate(Id parsed, String id) {
+        for (Stripe stripe : stripes) {
+            if (readInt(stripe, () -> stripe.store.find(parsed, id)) >= 0) {
+                return stripe;
+            }
+        }
+        return null;
+    }
+    
+    // {sum, loggedDays, min, max} of the daily totals in the range
+    private double[] calorieRange(LocalDate startDate, LocalDate endDate) {
+        double[] range = rangeIndex.query(startDate.toEpochDay(), endDate.toEpochDay());
+        while (range == null) {
+            // The range tree has to be built from every stripe's totals first
+            for (Stripe stripe : stripes) {
+                repairAll(stripe);
+            }
+            long[] stamps = new long[stripes.length];
+            for (int i = 0; i < stripes.length; i++) {
+                stamps[i] = stripes[i].lock.readLock();
+            }
+            try {
+                LogDateIndex[] indexes = new LogDateIndex[stripes.length];
+                for (int i = 0; i < stripes.length; i++) {
+                    indexes[i] = stripes[i].dateIndex;
+                }
+                rangeIndex.rebuild(indexes);
+            } finally {
+                for (int i = stripes.length - 1; i >= 0; i--) {
+                    stripes[i].lock.unlockRead(stamps[i]);
+                }
+            }
+            // Null again only if calories changed or a new day fell outside the tree
+            range = rangeIndex.query(startDate.toEpochDay(), endDate.toEpochDay());
+        }
+        return range;
+    }
+    
+    // Day totals go stale when any food's calories change. Reads can sum the rows
+    // of a stale day, but do not update it under their shared lock, so the first
+    // read to find a day (or a stripe) stale repairs it under the write lock and
+    // later reads are answered from the totals again.
+    private static void repairDay(Stripe stripe, long day) {
+        if (readInt(stripe, () -> stripe.dateIndex.isStale(day) ? 1 : 0) == 1) {
+            stripe.writeLock.lock();
+            try {
+                stripe.dateIndex.refresh(day);
+            } finally {
+                stripe.writeLock.unlock();
+            }
+        }
+    }
+    
+    private static void repairAll(Stripe stripe) {
+        if (readInt(stripe, () -> stripe.dateIndex.isStale() ? 1 : 0) == 1) {
+            stripe.writeLock.lock();
+            try {
+                stripe.dateIndex.refreshAll();
+            } finally {
+                stripe.writeLock.unlock();
+            }
+        }
+    }
+    
+    // 1 if the date has entries, else 0
+    private static int loggedDays(Stripe stripe, LocalDate date) {
+        return readInt(stripe, () -> stripe.dateIndex.hasDay(date) ? 1 : 0);
+    }
+    
+    private int entryCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.store.size();
+        }
+        return count;
+    }
+    
+    private int dayCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            count += stripe.dateIndex.dayCount();
+        }
+        return count;
+    }
+    
+    // Insert a row, or replace the entry with the same id keeping its place in
+    // its stripe (or moving it to the stripe of its new day).
+    // Two threads putting the same new id on different days at once may both insert it.
+    private void putRow(LogRow logRow, Food food, boolean journaled) {
+        LogEntryStore.check(logRow.epochDay, logRow.mealType);
+        Id parsed = Id.parse(logRow.id);
+        Stripe target = stripeFor(logRow.epochDay);
         
-        public Command(CommandType type, FoodLogEntry entry) {
-            this.type = type;
-            this.oldEntry = entry;
+        while (true) {
+            Stripe source = locate(parsed, logRow.id);
+            Stripe locked = source == null ? target : source;
+            lock(locked, target);
+            try {
+                int row = locked.store.find(parsed, logRow.id);
+                if (source != null && row < 0) {
+                    continue; // Moved to another stripe or deleted meanwhile
+                }
+                
+                if (row >= 0) {
+                    locked.dateIndex.remove(row);
+                    locked.store.set(row, logRow.epochDay, logRow.nanoOfDay, logRow.mealType, food, logRow.servings);
+                    reindex(locked, row, logRow.id, journaled);
+                } else {
+                    row = target.store.insert(logRow.id, logRow.epochDay, logRow.nanoOfDay, logRow.mealType,
+                            food, logRow.servings);
+                    target.dateIndex.add(row);
+                    if (journaled) {
+                        journalPut(target, row);
+                    }
+                }
+                return;
+            } finally {
+                unlock(locked, target);
+            }
+        }
+    }
+    
+    // Single-threaded counterpart of putRow for the constructor, before the service
+    // is shared: nothing is locked or journaled. Snapshot rows skip the search for
+    // an existing entry, as a snapshot is written from a map and holds each id once.
+    private void loadRow(LogRow logRow, Food food, boolean fromSnapshot) {
+        LogEntryStore.check(logRow.epochDay, logRow.mealType);
+        Stripe target = stripeFor(logRow.epochDay);
+        if (!fromSnapshot) {
+            Id parsed = Id.parse(logRow.id);
+            Stripe source = findLoaded(parsed, logRow.id, target);
+            if (source != null) {
+                int row = source.store.find(parsed, logRow.id);
+                source.dateIndex.remove(row);
+                source.store.set(row, logRow.epochDay, logRow.nanoOfDay, logRow.mealType, food, logRow.servings);
+                reindex(source, row, logRow.id, false);
+                return;
+            }
+        }
+        int row = target.store.insert(logRow.id, logRow.epochDay, logRow.nanoOfDay, logRow.mealType,
+                food, logRow.servings);
+        target.dateIndex.add(row);
+    }
+    
+    // Stripe holding the id while loading, or null; tries likely first, which most
+    // replayed records find unchanged in the stripe of their day
+    private Stripe findLoaded(Id parsed, String id, Stripe likely) {
+        if (likely != null && likely.store.find(parsed, id) >= 0) {
+            return likely;
+        }
+        for (Stripe stripe : stripes) {
+            if (stripe != likely && stripe.store.find(parsed, id) >= 0) {
+                return stripe;
+            }
+        }
+        return null;
+    }
+    
+    // Remove the entry with the id, recording it for undo if journaled (a user
+    // delete rather than a replayed one). Returns false if there is none.
+    private boolean removeRow(String id, boolean journaled) {
+        Id parsed = Id.parse(id);
+        while (true) {
+            Stripe stripe = locate(parsed, id);
+            if (stripe == null) {
+                return false;
+            }
+            
+            stripe.writeLock.lock();
+            try {
+                int row = stripe.store.find(parsed, id);
+                if (row < 0) {
+                    continue; // Moved to another stripe or deleted meanwhile
+                }
+                
+                if (journaled) {
+                    // Add to undo history
+                    history.recordDelete(id, stripe.store, row);
+                }
+                unindexRow(stripe, row);
+                if (journaled) {
+                    journalDelete(id);
+                }
+                return true;
+            } finally {
+                stripe.writeLock.unlock();
+            }
+        }
+    }
+    
+    private void unindexRow(Stripe stripe, int row) {
+        stripe.dateIndex.remove(row);
+        stripe.store.delete(row);
+    }
+    
+    // Index a row whose fields were just set while it was out of its stripe's date
+    // index, moving it to the stripe of its day if that is a different one.
+    // Both stripes must be write-locked.
+    private void reindex(Stripe source, int row, String id, boolean journaled) {
+        LogEntryStore from = source.store;
+        Stripe target = stripeFor(from.getEpochDay(row));
+        if (target != source) {
+            int moved = target.store.insert(id, from.getEpochDay(row), from.getNanoOfDay(row),
+                    from.getMealType(row), from.getFood(row), from.getServings(row));
+            from.delete(row);
+            row = moved;
+        }
+        target.dateIndex.add(row);
+        if (journaled) {
+            journalPut(target, row);
+        }
+    }
+    
+    // Undo (redo = false) or redo the next change in the history. Only the stripes
+    // of the days in its slot are locked, so the slot is checked again once they
+    // are: if another change got in first, it starts over. If the entry is not in
+    // the stripe the slot implies (an import changed it since), it starts over
+    // locking every stripe. Returns false if there is nothing to revert.
+    private boolean revert(boolean redo) {
+        boolean all = false;
+        while (true) {
+            Stripe first;
+            Stripe second;
+            long version;
+            String id;
+            boolean absent;
+            history.lock.lock();
+            try {
+                int slot = redo ? history.peekRedo() : history.peekUndo();
+                if (slot < 0) {
+                    return false;
+                }
+                version = history.getVersion();
+                Stripe before = history.exists(slot, false) ? stripeFor(history.getEpochDay(slot, false)) : null;
+                Stripe after = history.exists(slot, true) ? stripeFor(history.getEpochDay(slot, true)) : null;
+                first = before != null ? before : after;
+                second = after != null ? after : before;
+                id = history.getId(slot);
+                absent = !history.exists(slot, !redo);
+            } finally {
+                history.lock.unlock();
+            }
+            
+            // An entry that should not exist now may have been imported on another
+            // day. Probed before locking, as the probe's read locks would otherwise
+            // be taken out of stripe order.
+            if (!all && absent && isElsewhere(Id.parse(id), id, first, second)) {
+                all = true;
+            }
+            
+            boolean lockedAll = all;
+            if (lockedAll) {
+                lockAll();
+            } else {
+                lock(first, second);
+            }
+            try {
+                history.lock.lock();
+                try {
+                    if (history.getVersion() != version) {
+                        continue;
+                    }
+                    int slot = redo ? history.peekRedo() : history.peekUndo();
+                    Id parsed = Id.parse(id);
+                    Stripe source = null;
+                    int row = -1;
+                    if (lockedAll) {
+                        for (Stripe stripe : stripes) {
+                            row = stripe.store.find(parsed, id);
+                            if (row >= 0) {
+                                source = stripe;
+                                break;
+                            }
+                        }
+                    } else {
+                        // Where the entry is now, or where it would be re-created
+                        Stripe expected = stripeFor(history.getEpochDay(slot, absent ? redo : !redo));
+                        row = expected.store.find(parsed, id);
+                        if (row >= 0) {
+                            source = expected;
+                        } else if (!absent) {
+                            all = true;
+                            continue;
+                        }
+                    }
+                    
+                    restore(redo ? history.redo() : history.undo(), redo, source, row);
+                    return true;
+                } finally {
+                    history.lock.unlock();
+                }
+            } finally {
+                if (lockedAll) {
+                    unlockAll();
+                } else {
+                    unlock(first, second);
+                }
+            }
+        }
+    }
+    
+    // Whether a stripe other than these two holds the id; no stripe may be locked
+    private boolean isElsewhere(Id parsed, String id, Stripe first, Stripe second) {
+        for (Stripe stripe : stripes) {
+            if (stripe != first && stripe != second && readInt(stripe, () -> stripe.store.find(parsed, id)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    // Bring the entry of a history slot to its state before (after = false) or
+    // after the change, given the stripe and row now holding it (null and -1 if
+    // none). Entries changed since by import are overwritten; an update of an
+    // entry that no longer exists is skipped. The stripes of the entry's current
+    // day and of the slot's day on that side must be write-locked.
+    private void restore(int slot, boolean after, Stripe source, int row) {
+        String id = history.getId(slot);
+        if (!history.exists(slot, after)) {
+            if (source != null) {
+                unindexRow(source, row);
+                journalDelete(id);
+            }
+        } else if (source != null) {
+            source.dateIndex.remove(row);
+            history.apply(slot, after, source.store, row);
+            reindex(source, row, id, true);
+        } else if (history.getOp(slot) != UndoHistory.UPDATE) {
+            Stripe target = stripeFor(history.getEpochDay(slot, after));
+            row = history.insert(slot, after, target.store);
+            target.dateIndex.add(row);
+            journalPut(target, row);
+        }
+    }
+    
+    // Write-lock one or two stripes, in stripe order so writers cannot deadlock
+    private static void lock(Stripe a, Stripe b) {
+        Stripe first = a.number <= b.number ? a : b;
+        Stripe second = first == a ? b : a;
+        first.writeLock.lock();
+        if (second != first) {
+            second.writeLock.lock();
+        }
+    }
+    
+    private static void unlock(Stripe a, Stripe b) {
+        a.writeLock.unlock();
+        if (b != a) {
+            b.writeLock.unlock();
+        }
+    }
+    
+    private void lockAll() {
+        for (Stripe stripe : stripes) {
+            stripe.writeLock.lock();
+        }
+    }
+    
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].writeLock.unlock();
+        }
+    }
+    
+    // Run a read-only query against a stripe without locking, then check no writer
+    // got in the way. If one did, the result may be torn (or the query may have
+    // thrown), so it is run again under the read lock.
+    private static <T> T read(Stripe stripe, Supplier<T> query) {
+        long stamp = stripe.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = query.get();
+                if (stripe.lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Inconsistent state seen mid-write; retried below
+            }
         }
         
-        public Command(CommandType type, FoodLogEntry oldEntry, FoodLogEntry newEntry) {
-            this.type = type;
-            this.oldEntry = oldEntry;
-            this.newEntry = newEntry;
+        stamp = stripe.lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+    
+    private static double readDouble(Stripe stripe, DoubleSupplier query) {
+        long stamp = stripe.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                double result = query.getAsDouble();
+                if (stripe.lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Inconsistent state seen mid-write; retried below
+            }
         }
         
-        public CommandType getType() {
-            return type;
+        stamp = stripe.lock.readLock();
+        try {
+            return query.getAsDouble();
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+    
+    private static int readInt(Stripe stripe, IntSupplier query) {
+        long stamp = stripe.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int result = query.getAsInt();
+                if (stripe.lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                // Inconsistent state seen mid-write; retried below
+            }
         }
         
-        public FoodLogEntry getOldEntry() {
-            return oldEntry;
+        stamp = stripe.lock.readLock();
+        try {
+            return query.getAsInt();
+        } finally {
+            stripe.lock.unlockRead(stamp);
+        }
+    }
+    
+    // Journal records: "put" carries the full entry (insert or replace), "delete" only the id
+    private void journalPut(Stripe stripe, int row) {
+        appendToJournal(stripe.store.toRow(row).toJson().put("op", JOURNAL_PUT));
+    }
+    
+    private void journalDelete(String id) {
+        appendToJournal(new JSONObject().put("op", JOURNAL_DELETE).put("id", id));
+    }
+    
+    // Only queues the record: callers hold stripe locks, which fix the order of
+    // records for an entry, and the write happens in flushJournal once they are
+    // released, so writers on different stripes do not queue behind each other's I/O
+    private void appendToJournal(JSONObject record) {
+        journal.enqueue(record);
+    }
+    
+    // Write what this thread queued, with whatever other writers queued meanwhile.
+    // No stripe may be locked.
+    private void flushJournal() {
+        long start = Metrics.start();
+        try {
+            journal.flush();
+        } catch (IOException e) {
+            System.err.println("Error writing food log journal: " + e.getMessage());
+            return;
         }
+        JOURNAL_APPEND_TIME.recordSince(start);
+        compactor.afterAppend();
+    }
+    
+    // One partition of the log: the entries of the days that map to it, their
+    // date index, and the lock guarding both
+    private static class Stripe {
+        private final int number;
+        private final StampedLock lock = new StampedLock();
+        private final Lock writeLock = lock.asWriteLock();
+        private final LogEntryStore store = new LogEntryStore();
+        private final LogDateIndex dateIndex;
         
-        public FoodLogEntry getNewEntry() {
-            return newEntry;
+        Stripe(int number, CalorieRangeIndex rangeIndex) {
+            this.number = number;
+            this.dateIndex = new LogDateIndex(store, rangeIndex);
         }
     }
     
-    // Command type enum
-    private enum CommandType {
-        ADD,
-        DELETE,
-        UPDATE
+    // Emits a CalorieSummaryEvent for one summary query, noting whether it was
+    // answered from cached totals or had to re-sum rows or rebuild a range tree.
+    // With other writers active the counts may include their work too.
+    private class SummaryTrace {
+        private final CalorieSummaryEvent event = new CalorieSummaryEvent();
+        private long recomputedRows;
+        private long rangeTreeBuilds;
+        
+        SummaryTrace() {
+            if (event.isEnabled()) {
+                recomputedRows = getRecomputedRows();
+                rangeTreeBuilds = rangeIndex.getBuilds();
+            }
+            event.begin();
+        }
+        
+        void commit(String kind, LocalDate startDate, LocalDate endDate, int days) {
+            event.end();
+            if (event.shouldCommit()) {
+                record(kind, startDate, endDate, days);
+            }
+        }
+        
+        // For one-day queries; whether the day is logged is only looked up when
+        // the event is recorded
+        void commitDay(String kind, Stripe stripe, LocalDate date) {
+            event.end();
+            if (event.shouldCommit()) {
+                record(kind, date, date, loggedDays(stripe, date));
+            }
+        }
+        
+        private void record(String kind, LocalDate startDate, LocalDate endDate, int days) {
+            event.kind = kind;
+            event.startDate = startDate == null ? null : startDate.toString();
+            event.endDate = endDate == null ? null : endDate.toString();
+            event.days = days;
+            event.entries = (int) (getRecomputedRows() - recomputedRows);
+            event.cacheHit = event.entries == 0 && rangeIndex.getBuilds() == rangeTreeBuilds;
+            event.commit();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,247 @@
+package backend.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Minimal pull parser for the JSON files this app writes.
+// Reads tokens straight from a buffered byte channel so callers can build model
+// objects as they go; nothing but the current token is ever held in memory.
+class JsonStreamReader implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final ByteArrayOutputStream token;
+    private boolean eof;
+    private long position;
+
+    JsonStreamReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        this.buffer.flip();
+        this.token = new ByteArrayOutputStream(64);
+    }
+
+    static JsonStreamReader open(Path path) throws IOException {
+        return new JsonStreamReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    void beginArray() throws IOException {
+        expect('[');
+    }
+
+    void endArray() throws IOException {
+        expect(']');
+    }
+
+    void beginObject() throws IOException {
+        expect('{');
+    }
+
+    void endObject() throws IOException {
+        expect('}');
+    }
+
+    // True if the current array or object has another element; consumes separating commas
+    boolean hasNext() throws IOException {
+        int c = peekClean();
+        if (c == ',') {
+            read();
+            c = peekClean();
+        }
+        return c != ']' && c != '}' && c != -1;
+    }
+
+    String nextName() throws IOException {
+        String name = nextString();
+        expect(':');
+        return name;
+    }
+
+    String nextString() throws IOException {
+        expect('"');
+        token.reset();
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw error("Unterminated string");
+            }
+            if (c == '"') {
+                return token.toString(StandardCharsets.UTF_8);
+            }
+            if (c != '\\') {
+                token.write(c);
+                continue;
+            }
+
+            int escaped = read();
+            switch (escaped) {
+                case 'b': token.write('\b'); break;
+                case 'f': token.write('\f'); break;
+                case 'n': token.write('\n'); break;
+                case 'r': token.write('\r'); break;
+                case 't': token.write('\t'); break;
+                case 'u':
+                    String unit = String.valueOf(readHexChar());
+                    if (Character.isHighSurrogate(unit.charAt(0)) && peek() == '\\') {
+                        read();
+                        if (read() != 'u') {
+                            throw error("Expected low surrogate escape");
+                        }
+                        unit = unit + readHexChar();
+                    }
+                    byte[] utf8 = unit.getBytes(StandardCharsets.UTF_8);
+                    token.write(utf8, 0, utf8.length);
+                    break;
+                case -1:
+                    throw error("Unterminated string");
+                default:
+                    token.write(escaped);
+            }
+        }
+    }
+
+    private char readHexChar() throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) {
+                throw error("Invalid unicode escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    double nextDouble() throws IOException {
+        peekClean();
+        token.reset();
+        int c;
+        while ((c = peek()) != -1 && (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E'
+                || (c >= '0' && c <= '9'))) {
+            token.write(read());
+        }
+        if (token.size() == 0) {
+            throw error("Expected a number");
+        }
+        return Double.parseDouble(token.toString(StandardCharsets.US_ASCII));
+    }
+
+    boolean nextBoolean() throws IOException {
+        int c = peekClean();
+        if (c == 't') {
+            expectLiteral("true");
+            return true;
+        }
+        if (c == 'f') {
+            expectLiteral("false");
+            return false;
+        }
+        throw error("Expected a boolean");
+    }
+
+    // Skip one value of any type, including nested arrays and objects
+    void skipValue() throws IOException {
+        int c = peekClean();
+        switch (c) {
+            case '"':
+                nextString();
+                break;
+            case '[':
+                beginArray();
+                while (hasNext()) {
+                    skipValue();
+                }
+                endArray();
+                break;
+            case '{':
+                beginObject();
+                while (hasNext()) {
+                    nextName();
+                    skipValue();
+                }
+                endObject();
+                break;
+            case 't':
+            case 'f':
+                nextBoolean();
+                break;
+            case 'n':
+                expectLiteral("null");
+                break;
+            default:
+                nextDouble();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void expect(char expected) throws IOException {
+        if (peekClean() != expected) {
+            throw error("Expected '" + expected + "'");
+        }
+        read();
+    }
+
+    private void expectLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw error("Expected " + literal);
+            }
+        }
+    }
+
+    private int peekClean() throws IOException {
+        int c;
+        while ((c = peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            read();
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    private int read() throws IOException {
+        if (!buffer.hasRemaining() && !fill()) {
+            return -1;
+        }
+        position++;
+        return buffer.get() & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        if (eof) {
+            return false;
+        }
+        buffer.clear();
+        int read;
+        do {
+            read = channel.read(buffer);
+        } while (read == 0);
+        buffer.flip();
+        if (read < 0) {
+            eof = true;
+            return false;
+        }
+        return true;
+    }
+
+    private IOException error(String message) {
+        return new IOException(message + " at byte " + position);
+    }
+}
@@ -0,0 +1,284 @@
+package backend.services;
+
+import backend.models.Food;
+import backend.models.SymbolTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Inverted keyword -> food index used by FoodDatabaseService searches.
+// Every registered food gets a slot number; each keyword code (SymbolTable.KEYWORDS)
+// maps to the posting of slots holding it, so ALL queries are intersections and ANY
+// queries are unions. Query keywords are resolved to codes once per query.
+//
+// Most keywords are rare, so a posting is a sorted int[] of slots until it covers
+// more than 1/DENSITY_RATIO of the slots, and a BitSet from then on. Slots of
+// removed foods are reused, which keeps the bitsets from growing with the number
+// of foods ever added.
+class KeywordIndex {
+    // A BitSet posting costs a bit per slot, an array posting 32 bits per food
+    private static final int DENSITY_RATIO = 32;
+    // Below this many foods a posting stays an array whatever the density
+    private static final int MIN_DENSE = 64;
+
+    // Indexed by keyword code; null where no live food has the keyword
+    private final List<Posting> postings;
+    private int keywordCount;
+    private final Map<Food, Integer> slotsByFood;
+    // Indexed by slot; null for free slots
+    private Food[] foodsBySlot;
+    // Insertion order of the food in each slot, to return results in food list order
+    private int[] sequenceBySlot;
+    private int slotLimit;
+    private int[] freeSlots;
+    private int freeCount;
+    private int nextSequence;
+    // Set once a free slot is taken; until then slot order is insertion order
+    private boolean slotsReused;
+
+    KeywordIndex() {
+        postings = new ArrayList<>();
+        slotsByFood = new IdentityHashMap<>();
+        foodsBySlot = new Food[16];
+        sequenceBySlot = new int[16];
+        freeSlots = new int[16];
+    }
+
+    void add(Food food) {
+        if (slotsByFood.containsKey(food)) {
+            return;
+        }
+
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+            slotsReused = true;
+        } else {
+            if (slotLimit == foodsBySlot.length) {
+                foodsBySlot = Arrays.copyOf(foodsBySlot, slotLimit * 2);
+                sequenceBySlot = Arrays.copyOf(sequenceBySlot, slotLimit * 2);
+            }
+            slot = slotLimit++;
+        }
+        if (nextSequence == Integer.MAX_VALUE) {
+            renumber();
+        }
+        foodsBySlot[slot] = food;
+        sequenceBySlot[slot] = nextSequence++;
+        slotsByFood.put(food, slot);
+
+        for (int code : food.getKeywordCodes()) {
+            while (postings.size() <= code) {
+                postings.add(null);
+            }
+            Posting posting = postings.get(code);
+            if (posting == null) {
+                posting = new Posting();
+                postings.set(code, posting);
+                keywordCount++;
+            }
+            posting.add(slot, slotLimit);
+        }
+    }
+
+    void remove(Food food) {
+        Integer slot = slotsByFood.remove(food);
+        if (slot == null) {
+            return;
+        }
+
+        foodsBySlot[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+
+        for (int code : food.getKeywordCodes()) {
+            Posting posting = postings.get(code);
+            if (posting != null) {
+                posting.remove(slot, slotLimit);
+                if (posting.size == 0) {
+                    postings.set(code, null);
+                    keywordCount--;
+                }
+            }
+        }
+    }
+
+    List<Food> matchAll(List<String> keywords) {
+        if (keywords.isEmpty()) {
+            int[] slots = new int[slotLimit - freeCount];
+            int size = 0;
+            for (int slot = 0; slot < slotLimit; slot++) {
+                if (foodsBySlot[slot] != null) {
+                    slots[size++] = slot;
+                }
+            }
+            return collect(slots, size);
+        }
+
+        // Start from the rarest keyword so the intersection shrinks fastest
+        List<Posting> matched = new ArrayList<>(keywords.size());
+        for (String keyword : keywords) {
+            Posting posting = posting(keyword);
+            if (posting == null) {
+                return new ArrayList<>();
+            }
+            matched.add(posting);
+        }
+        matched.sort((a, b) -> Integer.compare(a.size, b.size));
+
+        int[] result = matched.get(0).toArray();
+        int size = result.length;
+        for (int i = 1; i < matched.size() && size > 0; i++) {
+            size = matched.get(i).retain(result, size);
+        }
+        return collect(result, size);
+    }
+
+    List<Food> matchAny(List<String> keywords) {
+        BitSet union = new BitSet(slotLimit);
+        for (String keyword : keywords) {
+            Posting posting = posting(keyword);
+            if (posting != null) {
+                posting.addTo(union);
+            }
+        }
+        return collect(union.stream().toArray(), union.cardinality());
+    }
+
+    int keywordCount() {
+        return keywordCount;
+    }
+
+    private Posting posting(String keyword) {
+        int code = SymbolTable.KEYWORDS.find(keyword);
+        return code >= 0 && code < postings.size() ? postings.get(code) : null;
+    }
+
+    // Foods of the first size slots, in the order they were added
+    private List<Food> collect(int[] slots, int size) {
+        List<Food> result = new ArrayList<>(size);
+        if (!slotsReused) {
+            for (int i = 0; i < size; i++) {
+                result.add(foodsBySlot[slots[i]]);
+            }
+            return result;
+        }
+
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (long) sequenceBySlot[slots[i]] << 32 | slots[i];
+        }
+        Arrays.sort(keys);
+        for (long key : keys) {
+            result.add(foodsBySlot[(int) key]);
+        }
+        return result;
+    }
+
+    // Number the live slots 0, 1, ... again in insertion order once the counter runs out
+    private void renumber() {
+        long[] keys = new long[slotLimit - freeCount];
+        int size = 0;
+        for (int slot = 0; slot < slotLimit; slot++) {
+            if (foodsBySlot[slot] != null) {
+                keys[size++] = (long) sequenceBySlot[slot] << 32 | slot;
+            }
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < size; i++) {
+            sequenceBySlot[(int) keys[i]] = i;
+        }
+        nextSequence = size;
+    }
+
+    // Slots of the foods with one keyword: sorted slots[0..size) while sparse,
+    // bits once dense
+    private static final class Posting {
+        private int[] slots = new int[4];
+        private BitSet bits;
+        private int size;
+
+        void add(int slot, int slotLimit) {
+            size++;
+            if (bits != null) {
+                bits.set(slot);
+                return;
+            }
+
+            int at = Arrays.binarySearch(slots, 0, size - 1, slot);
+            at = at < 0 ? -at - 1 : at;
+            if (size > slots.length) {
+                slots = Arrays.copyOf(slots, slots.length * 2);
+            }
+            System.arraycopy(slots, at, slots, at + 1, size - 1 - at);
+            slots[at] = slot;
+
+            if (size >= MIN_DENSE && (long) size * DENSITY_RATIO > slotLimit) {
+                bits = new BitSet(slotLimit);
+                for (int i = 0; i < size; i++) {
+                    bits.set(slots[i]);
+                }
+                slots = null;
+            }
+        }
+
+        void remove(int slot, int slotLimit) {
+            if (bits != null) {
+                if (bits.get(slot)) {
+                    bits.clear(slot);
+                    size--;
+                }
+                // Back to an array once well below the threshold, so it doesn't flip-flop
+                if ((long) size * DENSITY_RATIO * 2 < slotLimit) {
+                    slots = bits.stream().toArray();
+                    if (slots.length == 0) {
+                        slots = new int[4];
+                    }
+                    bits = null;
+                }
+                return;
+            }
+
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at >= 0) {
+                System.arraycopy(slots, at + 1, slots, at, size - 1 - at);
+                size--;
+                if (slots.length > 4 && size * 4 < slots.length) {
+                    slots = Arrays.copyOf(slots, slots.length / 2);
+                }
+            }
+        }
+
+        int[] toArray() {
+            return bits != null ? bits.stream().toArray() : Arrays.copyOf(slots, size);
+        }
+
+        // Keep the slots of candidates[0..count) that are in this posting; returns the new count
+        int retain(int[] candidates, int count) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                int slot = candidates[i];
+                if (bits != null ? bits.get(slot) : Arrays.binarySearch(slots, 0, size, slot) >= 0) {
+                    candidates[kept++] = slot;
+                }
+            }
+            return kept;
+        }
+
+        void addTo(BitSet union) {
+            if (bits != null) {
+                union.or(bits);
+            } else {
+                for (int i = 0; i < size; i++) {
+                    union.set(slots[i]);
+                }
+            }
+        }
+    }
+}
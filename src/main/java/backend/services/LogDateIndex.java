@@ -0,0 +1,396 @@
+package backend.services;
+
+import backend.models.Food;
+import backend.models.FoodLogEntry;
+import backend.models.SymbolTable;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// Food log rows partitioned by epoch day, each day subdivided by meal type code,
+// so per-day queries only touch that day's rows.
+// Buckets hold row numbers of a LogEntryStore; entries are only materialized
+// when a query returns them, and totals are computed straight from the columns.
+// Each bucket also keeps a running calorie total that is adjusted by deltas as
+// rows come and go. If any food's calories change (Food.getCalorieVersion)
+// a bucket recomputes its totals from its own rows on the next add or remove, or
+// when the owner calls refresh or refreshAll; until then reads sum its rows on
+// the fly.
+// Day totals are pushed to a CalorieRangeIndex, shared by every stripe of a log,
+// for O(log n) range queries.
+// Rows must be removed before their date, meal type, food or servings change.
+//
+// The query methods never modify the index, so they can run under a shared or
+// optimistic read lock; add and remove need exclusive access.
+class LogDateIndex {
+    // Fixed heap of a day: map entry, boxed key, bucket, its row list, the empty
+    // int[] and meal array headers. The arrays' slots are counted separately.
+    private static final long DAY_BYTES = 40 + 16 + 40 + 24 + 16 + 16;
+    // Fixed heap of a meal bucket: the bucket, its row list and int[] header
+    private static final long MEAL_BYTES = 24 + 24 + 16;
+    private final LogEntryStore store;
+    private final TreeMap<Long, DayBucket> days;
+    private final CalorieRangeIndex rangeIndex;
+    // Work done because cached totals were stale; callers compare this before and
+    // after a query to tell cached reads from recomputations
+    private final LongAdder recomputedRows = new LongAdder();
+    // Heap held by the buckets, kept up to date by add and remove
+    private long memoryBytes;
+    // Calorie version every bucket was current with as of the last refreshAll;
+    // buckets created since start out current
+    private long refreshedVersion = Food.getCalorieVersion();
+
+    LogDateIndex(LogEntryStore store, CalorieRangeIndex rangeIndex) {
+        this.store = store;
+        this.rangeIndex = rangeIndex;
+        days = new TreeMap<>();
+    }
+
+    void add(int row) {
+        long day = store.getEpochDay(row);
+        DayBucket bucket = days.get(day);
+        if (bucket == null) {
+            bucket = new DayBucket();
+            days.put(day, bucket);
+            memoryBytes += DAY_BYTES;
+        }
+        refresh(bucket);
+        memoryBytes -= bucket.arrayBytes();
+        bucket.add(store, row);
+        memoryBytes += bucket.arrayBytes();
+        rangeIndex.update(day, true, bucket.calories);
+    }
+
+    void remove(int row) {
+        long day = store.getEpochDay(row);
+        DayBucket bucket = days.get(day);
+        if (bucket == null) {
+            return;
+        }
+        refresh(bucket);
+        memoryBytes -= bucket.arrayBytes();
+        boolean removed = bucket.remove(store, row);
+        memoryBytes += bucket.arrayBytes();
+        if (removed) {
+            if (bucket.rows.isEmpty()) {
+                days.remove(day);
+                memoryBytes -= DAY_BYTES + bucket.arrayBytes();
+            }
+            rangeIndex.update(day, !bucket.rows.isEmpty(), bucket.calories);
+        }
+    }
+
+    List<FoodLogEntry> getEntries(LocalDate date) {
+        DayBucket bucket = days.get(date.toEpochDay());
+        return bucket == null ? new ArrayList<>() : toEntries(bucket.rows);
+    }
+
+    List<FoodLogEntry> getEntries(LocalDate date, String mealType) {
+        DayBucket bucket = days.get(date.toEpochDay());
+        if (bucket == null) {
+            return new ArrayList<>();
+        }
+        MealBucket meal = bucket.getMeal(SymbolTable.MEAL_TYPES.find(mealType));
+        return meal == null ? new ArrayList<>() : toEntries(meal.rows);
+    }
+
+    double getCalories(LocalDate date) {
+        DayBucket bucket = days.get(date.toEpochDay());
+        return bucket == null ? 0 : calories(bucket, bucket.rows, bucket.calories);
+    }
+
+    double getCalories(LocalDate date, String mealType) {
+        DayBucket bucket = days.get(date.toEpochDay());
+        if (bucket == null) {
+            return 0;
+        }
+        MealBucket meal = bucket.getMeal(SymbolTable.MEAL_TYPES.find(mealType));
+        return meal == null ? 0 : calories(bucket, meal.rows, meal.calories);
+    }
+
+    // Calories per logged day, in date order
+    Map<LocalDate, Double> getDailyCalories() {
+        Map<LocalDate, Double> summary = new LinkedHashMap<>();
+        for (Map.Entry<Long, DayBucket> day : days.entrySet()) {
+            DayBucket bucket = day.getValue();
+            summary.put(LocalDate.ofEpochDay(day.getKey()), calories(bucket, bucket.rows, bucket.calories));
+        }
+        return summary;
+    }
+
+    // Copy the logged days, in order, into days from offset on; returns the offset
+    // after the last one
+    int copyDays(long[] into, int offset) {
+        for (long day : days.keySet()) {
+            into[offset++] = day;
+        }
+        return offset;
+    }
+
+    // Load every day's current total into the tree, summing the rows of days whose
+    // total is stale without updating them
+    void loadDays(DayRangeTree tree) {
+        for (Map.Entry<Long, DayBucket> day : days.entrySet()) {
+            DayBucket bucket = day.getValue();
+            tree.load(day.getKey(), calories(bucket, bucket.rows, bucket.calories));
+        }
+    }
+
+    // A bucket's running total, or its rows summed afresh if the total is stale
+    private double calories(DayBucket bucket, RowList rows, double total) {
+        if (bucket.calorieVersion == Food.getCalorieVersion()) {
+            return total;
+        }
+        double sum = 0;
+        for (int i = 0; i < rows.size; i++) {
+            sum += store.getCalories(rows.rows[i]);
+        }
+        recomputedRows.add(rows.size);
+        return sum;
+    }
+
+    private void refresh(DayBucket bucket) {
+        recomputedRows.add(bucket.refresh(store));
+    }
+
+    // Whether the day's totals have to be recomputed
+    boolean isStale(long day) {
+        DayBucket bucket = days.get(day);
+        return bucket != null && bucket.calorieVersion != Food.getCalorieVersion();
+    }
+
+    // Whether any day's totals may have to be recomputed
+    boolean isStale() {
+        return refreshedVersion != Food.getCalorieVersion();
+    }
+
+    // Recompute a stale day's totals; needs the same access as add and remove. The
+    // range index needs no update: it is only current if it was loaded since the
+    // change, with the same sums.
+    void refresh(long day) {
+        DayBucket bucket = days.get(day);
+        if (bucket != null) {
+            refresh(bucket);
+        }
+    }
+
+    // Recompute the totals of every stale day; needs the same access as add and remove
+    void refreshAll() {
+        long version = Food.getCalorieVersion();
+        for (DayBucket bucket : days.values()) {
+            refresh(bucket);
+        }
+        refreshedVersion = version;
+    }
+
+    long getRecomputedRows() {
+        return recomputedRows.sum();
+    }
+
+    boolean hasDay(LocalDate date) {
+        return days.containsKey(date.toEpochDay());
+    }
+
+    int dayCount() {
+        return days.size();
+    }
+
+    // Heap held by the buckets: their objects plus the full capacity of their
+    // arrays. The shared range tree is counted by its CalorieRangeIndex.
+    long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    // Throws IllegalStateException unless every live row of the store is in the
+    // bucket of its day and meal type exactly once, and current bucket totals
+    // match their rows. For tests; needs the same access as add and remove.
+    void checkConsistency() {
+        BitSet seen = new BitSet();
+        int rowCount = 0;
+        for (Map.Entry<Long, DayBucket> day : days.entrySet()) {
+            DayBucket bucket = day.getValue();
+            if (bucket.rows.isEmpty()) {
+                throw new IllegalStateException("Empty bucket for day " + day.getKey());
+            }
+            int mealRows = 0;
+            for (int code = 0; code < bucket.byMealType.length; code++) {
+                MealBucket meal = bucket.byMealType[code];
+                if (meal == null) {
+                    continue;
+                }
+                double sum = 0;
+                for (int i = 0; i < meal.rows.size; i++) {
+                    int row = meal.rows.rows[i];
+                    if (store.getMealTypeCode(row) != code) {
+                        throw new IllegalStateException("Row " + row + " in the wrong meal bucket");
+                    }
+                    sum += store.getCalories(row);
+                }
+                checkTotal(bucket, meal.calories, sum, day.getKey());
+                mealRows += meal.rows.size;
+            }
+            if (mealRows != bucket.rows.size) {
+                throw new IllegalStateException("Meal buckets of day " + day.getKey() + " hold " + mealRows
+                        + " rows, the day " + bucket.rows.size);
+            }
+
+            double sum = 0;
+            for (int i = 0; i < bucket.rows.size; i++) {
+                int row = bucket.rows.rows[i];
+                if (seen.get(row)) {
+                    throw new IllegalStateException("Row " + row + " indexed twice");
+                }
+                seen.set(row);
+                if (store.getEpochDay(row) != day.getKey() || store.find(store.getId(row)) != row) {
+                    throw new IllegalStateException("Row " + row + " is not a live row of day " + day.getKey());
+                }
+                sum += store.getCalories(row);
+            }
+            checkTotal(bucket, bucket.calories, sum, day.getKey());
+            rowCount += bucket.rows.size;
+        }
+        if (rowCount != store.size()) {
+            throw new IllegalStateException("Date index holds " + rowCount + " rows, the store " + store.size());
+        }
+    }
+
+    private static void checkTotal(DayBucket bucket, double total, double sum, long day) {
+        if (bucket.calorieVersion == Food.getCalorieVersion() && Math.abs(total - sum) > 1e-6 * Math.max(1, sum)) {
+            throw new IllegalStateException("Running total " + total + " of day " + day + " but rows sum to " + sum);
+        }
+    }
+
+    private List<FoodLogEntry> toEntries(RowList rows) {
+        List<FoodLogEntry> entries = new ArrayList<>(rows.size);
+        for (int i = 0; i < rows.size; i++) {
+            entries.add(store.toEntry(rows.rows[i]));
+        }
+        return entries;
+    }
+
+    // Growable int list of row numbers
+    private static class RowList {
+        private int[] rows = new int[4];
+        private int size;
+
+        void add(int row) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+            }
+            rows[size++] = row;
+        }
+
+        boolean remove(int row) {
+            for (int i = 0; i < size; i++) {
+                if (rows[i] == row) {
+                    System.arraycopy(rows, i + 1, rows, i, size - i - 1);
+                    size--;
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+    }
+
+    private static class MealBucket {
+        private final RowList rows = new RowList();
+        private double calories;
+    }
+
+    private static class DayBucket {
+        private final RowList rows = new RowList();
+        // Indexed by meal type code
+        private MealBucket[] byMealType = new MealBucket[4];
+        private double calories;
+        private long calorieVersion = Food.getCalorieVersion();
+
+        // Slots of the bucket's arrays, plus the meal buckets they point to
+        long arrayBytes() {
+            long bytes = 4L * rows.rows.length + 4L * byMealType.length;
+            for (MealBucket meal : byMealType) {
+                if (meal != null) {
+                    bytes += MEAL_BYTES + 4L * meal.rows.rows.length;
+                }
+            }
+            return bytes;
+        }
+
+        MealBucket getMeal(int code) {
+            return code >= 0 && code < byMealType.length ? byMealType[code] : null;
+        }
+
+        void add(LogEntryStore store, int row) {
+            int code = store.getMealTypeCode(row);
+            if (code >= byMealType.length) {
+                byMealType = Arrays.copyOf(byMealType, Math.max(code + 1, byMealType.length * 2));
+            }
+            MealBucket meal = byMealType[code];
+            if (meal == null) {
+                meal = new MealBucket();
+                byMealType[code] = meal;
+            }
+            rows.add(row);
+            meal.rows.add(row);
+
+            // Stale totals are rebuilt on the next read anyway
+            if (calorieVersion == Food.getCalorieVersion()) {
+                double delta = store.getCalories(row);
+                calories += delta;
+                meal.calories += delta;
+            }
+        }
+
+        boolean remove(LogEntryStore store, int row) {
+            if (!rows.remove(row)) {
+                return false;
+            }
+            int code = store.getMealTypeCode(row);
+            MealBucket meal = byMealType[code];
+            meal.rows.remove(row);
+            if (meal.rows.isEmpty()) {
+                byMealType[code] = null;
+            }
+
+            if (calorieVersion == Food.getCalorieVersion()) {
+                double delta = store.getCalories(row);
+                calories -= delta;
+                meal.calories -= delta;
+            }
+            return true;
+        }
+
+        // Allocation-free: reads calories straight from the store's columns.
+        // Returns the number of rows re-summed, 0 if the totals were current.
+        int refresh(LogEntryStore store) {
+            long version = Food.getCalorieVersion();
+            if (calorieVersion == version) {
+                return 0;
+            }
+
+            calories = 0;
+            for (MealBucket meal : byMealType) {
+                if (meal == null) {
+                    continue;
+                }
+                meal.calories = 0;
+                for (int i = 0; i < meal.rows.size; i++) {
+                    meal.calories += store.getCalories(meal.rows.rows[i]);
+                }
+                calories += meal.calories;
+            }
+            calorieVersion = version;
+            return rows.size;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package backend.services;
+
+import backend.models.Food;
+import backend.models.FoodLogEntry;
+import backend.models.Id;
+import backend.models.SymbolTable;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Food log entries stored column-wise in parallel primitive arrays.
+// A row holds the entry id as two longs, epoch day, nano of day packed with a meal
+// type code (SymbolTable.MEAL_TYPES), a food ordinal, servings and an insertion
+// sequence number; foods live once in a small dictionary. That is 44 bytes of
+// columns and no objects per entry. FoodLogEntry objects are only built by
+// toEntry() when the service hands entries out.
+//
+// Measured with 1M entries over 3 years of days (compressed oops), the store, its
+// id table and a LogDateIndex over it take about 64 bytes per entry, against about
+// 173 for the list of FoodLogEntry objects they replace: 2.7x smaller. 5x would
+// mean 35 bytes, less than the id, day, time and servings alone once the id table
+// and per-day row lists are counted, so it would take lossy columns (float
+// servings, time rounded to the millisecond) or giving up the O(1) id lookup and
+// per-day lists that the update and query paths are built on.
+//
+// Rows are recycled through a free list. Insertion order comes from the sequence
+// column, so replacing an entry keeps its place. Ids are found through an
+// open-addressing table over the id columns; ids that are not canonical UUIDs are
+// kept in a side map.
+class LogEntryStore {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NONE = -1;
+    // Column bytes per row: id, day, time and meal, food, servings, sequence
+    private static final int ROW_BYTES = 8 + 8 + 4 + 8 + 4 + 8 + 4;
+    // Nano of day needs 47 bits; the meal type code goes in the 16 bits above
+    private static final int MEAL_SHIFT = 47;
+    private static final long NANOS_MASK = (1L << MEAL_SHIFT) - 1;
+    // SymbolTable.MAX_MEAL_TYPES keeps meal type codes well below 1 << 16
+
+    private long[] idHigh;
+    private long[] idLow;
+    private int[] epochDay;
+    private long[] timeAndMeal;
+    // NONE for free rows
+    private int[] foodOrdinal;
+    private double[] servings;
+    // Insertion order of live rows; links the free list for free rows
+    private int[] sequence;
+    // Only allocated once a non-UUID id shows up
+    private String[] otherIds;
+
+    private int capacity;
+    private int rowCount;
+    private int size;
+    private int nextSequence;
+    private int freeRows = NONE;
+
+    // Row + 1 for each UUID id, 0 for an empty slot
+    private int[] idTable;
+    private int idTableCount;
+    private final Map<String, Integer> otherIdRows;
+
+    private final List<Food> foods;
+    private final Map<Food, Integer> foodOrdinals;
+
+    LogEntryStore() {
+        allocate(INITIAL_CAPACITY);
+        idTable = new int[INITIAL_CAPACITY * 2];
+        otherIdRows = new HashMap<>();
+        foods = new ArrayList<>();
+        foodOrdinals = new IdentityHashMap<>();
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Approximate heap held by the columns and the id table
+    long getMemoryBytes() {
+        return (long) capacity * (ROW_BYTES + (otherIds == null ? 0 : 8)) + idTable.length * 4L;
+    }
+
+    // Live rows in insertion order
+    int[] rowsInOrder() {
+        long[] keys = new long[size];
+        int count = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (foodOrdinal[row] != NONE) {
+                keys[count++] = (long) sequence[row] << 32 | row;
+            }
+        }
+        Arrays.sort(keys);
+
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = (int) keys[i];
+        }
+        return rows;
+    }
+
+    // Appends a new row; the id must not be present yet. Throws before anything is
+    // stored if the day does not fit the column or the meal type table is full.
+    int insert(String id, long day, long nanos, String mealType, Food food, double servingCount) {
+        int meal = SymbolTable.MEAL_TYPES.intern(mealType);
+        checkDay(day);
+        if (nextSequence == Integer.MAX_VALUE) {
+            renumber();
+        }
+        int row = allocateRow();
+        setId(row, id);
+        setColumns(row, day, nanos, meal, food, servingCount);
+        sequence[row] = nextSequence++;
+        size++;
+        return row;
+    }
+
+    // Overwrites everything but the id; the row keeps its position. Throws like
+    // insert, leaving the row as it was; callers that unindex the row first call
+    // check() beforehand.
+    void set(int row, long day, long nanos, String mealType, Food food, double servingCount) {
+        int meal = SymbolTable.MEAL_TYPES.intern(mealType);
+        checkDay(day);
+        setColumns(row, day, nanos, meal, food, servingCount);
+    }
+
+    private void setColumns(int row, long day, long nanos, int meal, Food food, double servingCount) {
+        epochDay[row] = (int) day;
+        timeAndMeal[row] = nanos | (long) meal << MEAL_SHIFT;
+        foodOrdinal[row] = foodOrdinal(food);
+        servings[row] = servingCount;
+    }
+
+    // Throws if a row with this day and meal type could not be stored
+    static void check(long day, String mealType) {
+        checkDay(day);
+        SymbolTable.MEAL_TYPES.intern(mealType);
+    }
+
+    private static void checkDay(long day) {
+        if (day < Integer.MIN_VALUE || day > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Epoch day out of range: " + day);
+        }
+    }
+
+    void delete(int row) {
+        removeId(row);
+        foodOrdinal[row] = NONE;
+        sequence[row] = freeRows;
+        freeRows = row;
+        size--;
+    }
+
+    // Number the live rows 0, 1, ... again in insertion order once the counter runs out
+    private void renumber() {
+        int[] rows = rowsInOrder();
+        for (int i = 0; i < rows.length; i++) {
+            sequence[rows[i]] = i;
+        }
+        nextSequence = rows.length;
+    }
+
+    // Row holding the id, or -1
+    int find(String id) {
+        return find(Id.parse(id), id);
+    }
+
+    // Same, with the id already parsed (null if it is not a UUID)
+    int find(Id parsed, String id) {
+        if (parsed == null) {
+            Integer row = otherIdRows.get(id);
+            return row == null ? NONE : row;
+        }
+
+        long high = parsed.getHigh();
+        long low = parsed.getLow();
+        int mask = idTable.length - 1;
+        for (int slot = hash(high, low) & mask; idTable[slot] != 0; slot = (slot + 1) & mask) {
+            int row = idTable[slot] - 1;
+            if (idHigh[row] == high && idLow[row] == low) {
+                return row;
+            }
+        }
+        return NONE;
+    }
+
+    String getId(int row) {
+        if (otherIds != null && otherIds[row] != null) {
+            return otherIds[row];
+        }
+        return Id.toString(idHigh[row], idLow[row]);
+    }
+
+    long getEpochDay(int row) {
+        return epochDay[row];
+    }
+
+    long getNanoOfDay(int row) {
+        return timeAndMeal[row] & NANOS_MASK;
+    }
+
+    String getMealType(int row) {
+        return SymbolTable.MEAL_TYPES.name(getMealTypeCode(row));
+    }
+
+    int getMealTypeCode(int row) {
+        return (int) (timeAndMeal[row] >>> MEAL_SHIFT);
+    }
+
+    Food getFood(int row) {
+        return foods.get(foodOrdinal[row]);
+    }
+
+    double getServings(int row) {
+        return servings[row];
+    }
+
+    double getCalories(int row) {
+        return foods.get(foodOrdinal[row]).getCaloriesPerServing() * servings[row];
+    }
+
+    FoodLogEntry toEntry(int row) {
+        return new FoodLogEntry(getId(row), LocalDate.ofEpochDay(epochDay[row]),
+                LocalTime.ofNanoOfDay(getNanoOfDay(row)), getMealType(row), getFood(row), servings[row]);
+    }
+
+    LogRow toRow(int row) {
+        return new LogRow(getId(row), epochDay[row], getNanoOfDay(row), getMealType(row),
+                getFood(row).getId(), servings[row]);
+    }
+
+    private int allocateRow() {
+        if (freeRows != NONE) {
+            int row = freeRows;
+            freeRows = sequence[row];
+            return row;
+        }
+        if (rowCount == capacity) {
+            allocate(capacity * 2);
+        }
+        return rowCount++;
+    }
+
+    private void allocate(int newCapacity) {
+        idHigh = grow(idHigh, newCapacity);
+        idLow = grow(idLow, newCapacity);
+        epochDay = grow(epochDay, newCapacity);
+        timeAndMeal = grow(timeAndMeal, newCapacity);
+        foodOrdinal = grow(foodOrdinal, newCapacity);
+        servings = grow(servings, newCapacity);
+        sequence = grow(sequence, newCapacity);
+        if (otherIds != null) {
+            otherIds = Arrays.copyOf(otherIds, newCapacity);
+        }
+        capacity = newCapacity;
+    }
+
+    private static long[] grow(long[] array, int newCapacity) {
+        return array == null ? new long[newCapacity] : Arrays.copyOf(array, newCapacity);
+    }
+
+    private static int[] grow(int[] array, int newCapacity) {
+        return array == null ? new int[newCapacity] : Arrays.copyOf(array, newCapacity);
+    }
+
+    private static double[] grow(double[] array, int newCapacity) {
+        return array == null ? new double[newCapacity] : Arrays.copyOf(array, newCapacity);
+    }
+
+    private void setId(int row, String id) {
+        Id parsed = Id.parse(id);
+        if (parsed == null) {
+            if (otherIds == null) {
+                otherIds = new String[capacity];
+            }
+            otherIds[row] = id;
+            otherIdRows.put(id, row);
+            return;
+        }
+
+        if (otherIds != null) {
+            otherIds[row] = null;
+        }
+        idHigh[row] = parsed.getHigh();
+        idLow[row] = parsed.getLow();
+
+        // Keep the table at most half full
+        if ((idTableCount + 1) * 2 > idTable.length) {
+            rehash(idTable.length * 2);
+        }
+        placeId(row);
+        idTableCount++;
+    }
+
+    private void removeId(int row) {
+        if (otherIds != null && otherIds[row] != null) {
+            otherIdRows.remove(otherIds[row]);
+            otherIds[row] = null;
+            return;
+        }
+
+        int mask = idTable.length - 1;
+        int slot = hash(idHigh[row], idLow[row]) & mask;
+        while (idTable[slot] != row + 1) {
+            slot = (slot + 1) & mask;
+        }
+
+        // Backward-shift deletion keeps probe chains intact without tombstones
+        int gap = slot;
+        for (int i = (gap + 1) & mask; idTable[i] != 0; i = (i + 1) & mask) {
+            int home = hash(idHigh[idTable[i] - 1], idLow[idTable[i] - 1]) & mask;
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                idTable[gap] = idTable[i];
+                gap = i;
+            }
+        }
+        idTable[gap] = 0;
+        idTableCount--;
+    }
+
+    private void placeId(int row) {
+        int mask = idTable.length - 1;
+        int slot = hash(idHigh[row], idLow[row]) & mask;
+        while (idTable[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        idTable[slot] = row + 1;
+    }
+
+    private void rehash(int newLength) {
+        int[] old = idTable;
+        idTable = new int[newLength];
+        for (int entry : old) {
+            if (entry != 0) {
+                placeId(entry - 1);
+            }
+        }
+    }
+
+    private static int hash(long high, long low) {
+        long h = (high ^ low) * 0x9E37_79B9_7F4A_7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int foodOrdinal(Food food) {
+        Integer ordinal = foodOrdinals.get(food);
+        if (ordinal == null) {
+            ordinal = foods.size();
+            foods.add(food);
+            foodOrdinals.put(food, ordinal);
+        }
+        return ordinal;
+    }
+}
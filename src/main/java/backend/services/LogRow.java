@@ -0,0 +1,46 @@
+package backend.services;
+
+import org.json.JSONObject;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+// A food log entry as stored on disk, with the food still referenced by id.
+// Used where entries are moved between files without resolving foods.
+class LogRow {
+    final String id;
+    final long epochDay;
+    final long nanoOfDay;
+    final String mealType;
+    final String foodId;
+    final double servings;
+
+    LogRow(String id, long epochDay, long nanoOfDay, String mealType, String foodId, double servings) {
+        this.id = id;
+        this.epochDay = epochDay;
+        this.nanoOfDay = nanoOfDay;
+        this.mealType = mealType;
+        this.foodId = foodId;
+        this.servings = servings;
+    }
+
+    static LogRow fromJson(JSONObject entryJson) {
+        return new LogRow(entryJson.getString("id"),
+                LocalDate.parse(entryJson.getString("date")).toEpochDay(),
+                LocalTime.parse(entryJson.getString("time")).toNanoOfDay(),
+                entryJson.getString("mealType"),
+                entryJson.getString("foodId"),
+                entryJson.getDouble("servings"));
+    }
+
+    JSONObject toJson() {
+        JSONObject entryJson = new JSONObject();
+        entryJson.put("id", id);
+        entryJson.put("date", LocalDate.ofEpochDay(epochDay).toString());
+        entryJson.put("time", LocalTime.ofNanoOfDay(nanoOfDay).toString());
+        entryJson.put("mealType", mealType);
+        entryJson.put("foodId", foodId);
+        entryJson.put("servings", servings);
+        return entryJson;
+    }
+}
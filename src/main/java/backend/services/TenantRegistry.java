@@ -0,0 +1,426 @@
+package backend.services;
+
+import backend.metrics.Counter;
+import backend.metrics.LatencyHistogram;
+import backend.metrics.Metrics;
+import backend.models.UserProfile;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+// Hosts the data of many users (tenants) in one process. Each tenant lives in its
+// own directory under the root, named after its user id, holding its food log
+// files and user_profile.json. The food catalog is one FoodDatabaseService shared
+// by all tenants; it is not thread-safe, so threads using it synchronize on it for
+// each call, as FoodLogService does for every food it resolves.
+//
+// Tenants are loaded on first access and kept in least-recently-used order. When
+// the estimated memory of the resident tenants exceeds the budget, the least
+// recently used ones that are not in use are flushed and evicted; they are loaded
+// again on their next access. Loading and flushing happen outside the registry
+// lock; a user being evicted is not loaded again until its files are written.
+// The registry and each tenant use a ReentrantLock rather than a monitor: the
+// server runs requests on virtual threads, which file I/O under a monitor would
+// pin to their carrier thread.
+// A tenant is in use between acquire and release:
+//
+//   Tenant tenant = registry.acquire(userId);
+//   try {
+//       tenant.getFoodLog().addEntry(...);
+//   } finally {
+//       registry.release(tenant);
+//   }
+public class TenantRegistry {
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024 * 1024;
+    // Tenants rarely need a long history, and each slot is allocated up front
+    public static final int DEFAULT_UNDO_DEPTH = 100;
+    // User ids are used as directory names
+    private static final Pattern USER_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+    // Rough cost of a loaded tenant besides its log: services, profile, journal
+    private static final long TENANT_BYTES = 8 * 1024;
+    private static final LatencyHistogram LOAD_TIME = Metrics.histogram("tenants.load");
+    private static final LatencyHistogram EVICT_TIME = Metrics.histogram("tenants.evict");
+    private static final Counter LOADS = Metrics.counter("tenants.loads");
+    private static final Counter EVICTIONS = Metrics.counter("tenants.evictions");
+
+    private final File rootDirectory;
+    private final FoodDatabaseService foodDatabaseService;
+    private final FoodLogJournal.SyncPolicy syncPolicy;
+    // Access-ordered, least recently used first. Guarded by lock, as are each
+    // tenant's users and memoryBytes.
+    private final LinkedHashMap<String, Tenant> tenants;
+    // Users removed from tenants whose files are still being flushed
+    private final Set<String> evicting;
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when a user is no longer being evicted, and on close
+    private final Condition evictionDone = lock.newCondition();
+    private long memoryBudget;
+    private long residentBytes;
+    private int undoDepth;
+    private boolean closed;
+
+    public TenantRegistry(File rootDirectory, FoodDatabaseService foodDatabaseService) {
+        this(rootDirectory, foodDatabaseService, DEFAULT_MEMORY_BUDGET, FoodLogJournal.SyncPolicy.BATCHED);
+    }
+
+    public TenantRegistry(File rootDirectory, FoodDatabaseService foodDatabaseService, long memoryBudget,
+                          FoodLogJournal.SyncPolicy syncPolicy) {
+        this.rootDirectory = rootDirectory;
+        this.foodDatabaseService = foodDatabaseService;
+        this.memoryBudget = memoryBudget;
+        this.syncPolicy = syncPolicy;
+        this.undoDepth = DEFAULT_UNDO_DEPTH;
+        this.tenants = new LinkedHashMap<>(16, 0.75f, true);
+        this.evicting = new HashSet<>();
+
+        Metrics.gauge("tenants.resident", this, TenantRegistry::getResidentCount);
+        Metrics.gauge("tenants.memoryBytes", this, TenantRegistry::getResidentBytes);
+    }
+
+    public FoodDatabaseService getFoodDatabaseService() {
+        return foodDatabaseService;
+    }
+
+    // Get the tenant of a user, loading it if it is not resident, and mark it in use
+    // until release. Throws IllegalArgumentException for ids that are not 1-64
+    // letters, digits, '-' or '_'.
+    public Tenant acquire(String userId) {
+        if (userId == null || !USER_ID.matcher(userId).matches()) {
+            throw new IllegalArgumentException("Invalid user id: " + userId);
+        }
+
+        Tenant tenant;
+        lock.lock();
+        try {
+            while (evicting.contains(userId) && !closed) {
+                try {
+                    evictionDone.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for user " + userId + " to be evicted");
+                }
+            }
+            if (closed) {
+                throw new IllegalStateException("Tenant registry is closed");
+            }
+            tenant = tenants.computeIfAbsent(userId, id -> new Tenant(id, new File(rootDirectory, id)));
+            tenant.users++;
+        } finally {
+            lock.unlock();
+        }
+
+        // Loading happens outside the registry lock so other tenants stay available;
+        // the tenant cannot be evicted while it is in use
+        boolean loaded;
+        try {
+            loaded = tenant.load(foodDatabaseService, syncPolicy, undoDepth);
+        } catch (RuntimeException e) {
+            release(tenant);
+            throw e;
+        }
+        if (loaded) {
+            updateMemory(tenant);
+        }
+        return tenant;
+    }
+
+    // End a use of the tenant started by acquire
+    public void release(Tenant tenant) {
+        lock.lock();
+        try {
+            tenant.users--;
+        } finally {
+            lock.unlock();
+        }
+        updateMemory(tenant);
+    }
+
+    // Flush every resident tenant to disk, keeping them loaded
+    public void flushAll() {
+        for (Tenant tenant : residentTenants()) {
+            tenant.flush();
+        }
+    }
+
+    // Flush and unload every tenant; the registry must not be used afterwards.
+    // The shared catalog is left to the caller.
+    public void close() {
+        List<Tenant> resident;
+        lock.lock();
+        try {
+            closed = true;
+            resident = new ArrayList<>(tenants.values());
+            tenants.clear();
+            residentBytes = 0;
+            evictionDone.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        for (Tenant tenant : resident) {
+            tenant.unload();
+        }
+        // Evictions still flushing on other threads
+        lock.lock();
+        try {
+            while (!evicting.isEmpty()) {
+                try {
+                    evictionDone.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setMemoryBudget(long bytes) {
+        List<Tenant> evicted;
+        lock.lock();
+        try {
+            memoryBudget = bytes;
+            evicted = evictIdle();
+        } finally {
+            lock.unlock();
+        }
+        unload(evicted);
+    }
+
+    public long getMemoryBudget() {
+        lock.lock();
+        try {
+            return memoryBudget;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Undo depth of tenants loaded from now on
+    public void setUndoDepth(int depth) {
+        lock.lock();
+        try {
+            undoDepth = depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getResidentCount() {
+        lock.lock();
+        try {
+            return tenants.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Estimated memory of the resident tenants as of their last release
+    public long getResidentBytes() {
+        lock.lock();
+        try {
+            return residentBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isResident(String userId) {
+        lock.lock();
+        try {
+            return tenants.containsKey(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Tenant> residentTenants() {
+        lock.lock();
+        try {
+            return new ArrayList<>(tenants.values());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Re-estimate a tenant's memory and evict idle tenants if over budget
+    private void updateMemory(Tenant tenant) {
+        long bytes = tenant.estimateMemoryBytes();
+        List<Tenant> evicted;
+        lock.lock();
+        try {
+            // An evicted tenant is no longer counted
+            if (tenants.get(tenant.userId) == tenant) {
+                residentBytes += bytes - tenant.memoryBytes;
+                tenant.memoryBytes = bytes;
+            }
+            evicted = evictIdle();
+        } finally {
+            lock.unlock();
+        }
+        unload(evicted);
+    }
+
+    // Remove least recently used tenants not in use until within budget, marking
+    // them as evicting. The caller unloads them once it has left the registry lock.
+    private List<Tenant> evictIdle() {
+        List<Tenant> evicted = new ArrayList<>();
+        Iterator<Tenant> iterator = tenants.values().iterator();
+        while (residentBytes > memoryBudget && iterator.hasNext()) {
+            Tenant tenant = iterator.next();
+            if (tenant.users > 0) {
+                continue;
+            }
+
+            iterator.remove();
+            residentBytes -= tenant.memoryBytes;
+            evicting.add(tenant.userId);
+            evicted.add(tenant);
+        }
+        return evicted;
+    }
+
+    // Flush and unload evicted tenants, then let their users be loaded again
+    private void unload(List<Tenant> evicted) {
+        for (Tenant tenant : evicted) {
+            long start = Metrics.start();
+            try {
+                tenant.unload();
+            } finally {
+                lock.lock();
+                try {
+                    evicting.remove(tenant.userId);
+                    evictionDone.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            EVICTIONS.increment();
+            EVICT_TIME.recordSince(start);
+        }
+    }
+
+    // One user's food log and profile. Valid between acquire and release.
+    public static class Tenant {
+        private final String userId;
+        private final File directory;
+        // Held while loading, flushing and unloading; guards foodLog and profileService
+        private final ReentrantLock lock = new ReentrantLock();
+        private FoodLogService foodLog;
+        private UserProfileService profileService;
+        // Guarded by the registry
+        private int users;
+        private long memoryBytes;
+
+        private Tenant(String userId, File directory) {
+            this.userId = userId;
+            this.directory = directory;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        public FoodLogService getFoodLog() {
+            lock.lock();
+            try {
+                return foodLog;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public UserProfileService getProfileService() {
+            lock.lock();
+            try {
+                return profileService;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public UserProfile getProfile() {
+            return getProfileService().getProfile();
+        }
+
+        // Force the log and profile to disk
+        public void flush() {
+            lock.lock();
+            try {
+                if (foodLog != null) {
+                    foodLog.saveLog();
+                    saveProfile();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Returns false if the tenant was already loaded
+        private boolean load(FoodDatabaseService foodDatabaseService,
+                             FoodLogJournal.SyncPolicy syncPolicy, int undoDepth) {
+            lock.lock();
+            try {
+                if (foodLog != null) {
+                    return false;
+                }
+
+                long start = Metrics.start();
+                profileService = new UserProfileService(directory);
+                foodLog = new FoodLogService(foodDatabaseService, directory, syncPolicy,
+                        FoodLogCompactor.DEFAULT_TRIGGER, FoodLogCompactor.SnapshotFormat.BINARY, undoDepth);
+                LOADS.increment();
+                LOAD_TIME.recordSince(start);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void unload() {
+            lock.lock();
+            try {
+                if (foodLog == null) {
+                    return;
+                }
+                saveProfile();
+                foodLog.saveLog();
+                foodLog.close();
+                foodLog = null;
+                profileService = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Reading a user that does not exist must not create it: the directory only
+        // appears once the log is written to, or the profile is saved explicitly
+        // through getProfileService()
+        private void saveProfile() {
+            if (directory.isDirectory()) {
+                profileService.saveProfile();
+            }
+        }
+
+        private long estimateMemoryBytes() {
+            lock.lock();
+            try {
+                return foodLog == null ? 0 : TENANT_BYTES + foodLog.getEstimatedMemoryBytes();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
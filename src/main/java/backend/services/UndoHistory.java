@@ -0,0 +1,341 @@
+package backend.services;
+
+import backend.models.Food;
+import backend.models.SymbolTable;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded undo/redo history of food log changes: a ring buffer of fixed-size slots
+// held in parallel arrays, so recording a change allocates nothing.
+// ADD and DELETE slots hold every field of the entry so it can be re-created.
+// UPDATE slots are field-level deltas: a mask of the fields that changed, with
+// their values before and after. Fields outside the mask are left as they are.
+//
+// The slots from start hold undoCount changes that can be undone, followed by
+// redoCount that were undone and can be redone. Recording a change drops the
+// redoable ones; once the buffer is full the oldest change is overwritten.
+//
+// Methods hold lock so writers on different stripes of FoodLogService can record
+// concurrently. Slot accessors (getOp, apply, ...) are only valid while holding
+// lock, as undo and redo do. It is a ReentrantLock rather than the monitor since
+// undo and redo journal the change while holding it, which would pin a virtual
+// thread to its carrier. getVersion changes with every change to the history, so
+// a slot peeked at can be checked to still be the next one after the lock was
+// released in between.
+class UndoHistory {
+    static final int DEFAULT_DEPTH = 1000;
+    // Heap cost of one slot, not counting the id string (usually shared with the
+    // entry) or the food (shared with the database)
+    static final int SLOT_BYTES = 2 + 4 + 2 * (4 + 8 + 4 + 4 + 8);
+
+    static final byte ADD = 1;
+    static final byte DELETE = 2;
+    static final byte UPDATE = 3;
+
+    // Change mask bits
+    private static final int DAY = 1;
+    private static final int TIME = 2;
+    private static final int MEAL = 4;
+    private static final int FOOD = 8;
+    private static final int SERVINGS = 16;
+    private static final int ALL_FIELDS = DAY | TIME | MEAL | FOOD | SERVINGS;
+
+    private int depth;
+    private byte[] op;
+    private byte[] changed;
+    private String[] id;
+    // Index 0 of each pair is the value before the change, 1 the value after,
+    // at [slot * 2 + side]
+    private int[] epochDay;
+    private long[] nanoOfDay;
+    private int[] mealCode;
+    private Food[] food;
+    private double[] servings;
+    private int start;
+    private int undoCount;
+    private int redoCount;
+    private long version;
+    final ReentrantLock lock = new ReentrantLock();
+
+    UndoHistory(int depth) {
+        this.depth = Math.max(1, depth);
+        op = new byte[this.depth];
+        changed = new byte[this.depth];
+        id = new String[this.depth];
+        epochDay = new int[this.depth * 2];
+        nanoOfDay = new long[this.depth * 2];
+        mealCode = new int[this.depth * 2];
+        food = new Food[this.depth * 2];
+        servings = new double[this.depth * 2];
+    }
+
+    // Depth that keeps the history within roughly the given number of bytes
+    static int depthFor(long bytes) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, bytes / SLOT_BYTES));
+    }
+
+    // Change the depth, keeping the most recent undoable changes; redo is cleared
+    void resize(int newDepth) {
+        lock.lock();
+        try {
+            UndoHistory resized = new UndoHistory(newDepth);
+            int keep = Math.min(undoCount, resized.depth);
+            for (int i = undoCount - keep; i < undoCount; i++) {
+                int from = slot(i);
+                int to = resized.undoCount++;
+                resized.op[to] = op[from];
+                resized.changed[to] = changed[from];
+                resized.id[to] = id[from];
+                System.arraycopy(epochDay, from * 2, resized.epochDay, to * 2, 2);
+                System.arraycopy(nanoOfDay, from * 2, resized.nanoOfDay, to * 2, 2);
+                System.arraycopy(mealCode, from * 2, resized.mealCode, to * 2, 2);
+                System.arraycopy(food, from * 2, resized.food, to * 2, 2);
+                System.arraycopy(servings, from * 2, resized.servings, to * 2, 2);
+            }
+
+            depth = resized.depth;
+            op = resized.op;
+            changed = resized.changed;
+            id = resized.id;
+            epochDay = resized.epochDay;
+            nanoOfDay = resized.nanoOfDay;
+            mealCode = resized.mealCode;
+            food = resized.food;
+            servings = resized.servings;
+            start = 0;
+            undoCount = resized.undoCount;
+            redoCount = 0;
+            version++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getDepth() {
+        lock.lock();
+        try {
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Undoable changes
+    int size() {
+        lock.lock();
+        try {
+            return undoCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean canUndo() {
+        lock.lock();
+        try {
+            return undoCount > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean canRedo() {
+        lock.lock();
+        try {
+            return redoCount > 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // An entry was added as the given row
+    void recordAdd(String entryId, LogEntryStore store, int row) {
+        lock.lock();
+        try {
+            capture(push(ADD, entryId) * 2 + 1, store, row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The given row is about to be deleted
+    void recordDelete(String entryId, LogEntryStore store, int row) {
+        lock.lock();
+        try {
+            capture(push(DELETE, entryId) * 2, store, row);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // The given row is about to be set to these values
+    void recordUpdate(String entryId, LogEntryStore store, int row,
+                      long day, long nanos, int meal, Food newFood, double newServings) {
+        lock.lock();
+        try {
+            int slot = push(UPDATE, entryId);
+            int before = slot * 2;
+            int after = before + 1;
+            capture(before, store, row);
+            epochDay[after] = (int) day;
+            nanoOfDay[after] = nanos;
+            mealCode[after] = meal;
+            food[after] = newFood;
+            servings[after] = newServings;
+
+            int mask = 0;
+            if (epochDay[before] != epochDay[after]) {
+                mask |= DAY;
+            }
+            if (nanoOfDay[before] != nanoOfDay[after]) {
+                mask |= TIME;
+            }
+            if (mealCode[before] != mealCode[after]) {
+                mask |= MEAL;
+            }
+            if (food[before] != food[after]) {
+                mask |= FOOD;
+            }
+            if (Double.compare(servings[before], servings[after]) != 0) {
+                mask |= SERVINGS;
+            }
+            changed[slot] = (byte) mask;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int push(byte type, String entryId) {
+        version++;
+        redoCount = 0;
+        if (undoCount == depth) {
+            start = (start + 1) % depth;
+            undoCount--;
+        }
+        int slot = slot(undoCount++);
+        op[slot] = type;
+        changed[slot] = ALL_FIELDS;
+        id[slot] = entryId;
+        return slot;
+    }
+
+    // Slot undo() would return, or -1 if there is nothing to undo
+    int peekUndo() {
+        lock.lock();
+        try {
+            return undoCount > 0 ? slot(undoCount - 1) : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Slot redo() would return, or -1 if there is nothing to redo
+    int peekRedo() {
+        lock.lock();
+        try {
+            return redoCount > 0 ? slot(undoCount) : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getVersion() {
+        lock.lock();
+        try {
+            return version;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Moves the most recent change to the redo side and returns its slot
+    int undo() {
+        lock.lock();
+        try {
+            version++;
+            undoCount--;
+            redoCount++;
+            return slot(undoCount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Moves the next undone change back to the undo side and returns its slot
+    int redo() {
+        lock.lock();
+        try {
+            version++;
+            redoCount--;
+            return slot(undoCount++);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void clear() {
+        lock.lock();
+        try {
+            Arrays.fill(id, null);
+            Arrays.fill(food, null);
+            start = 0;
+            undoCount = 0;
+            redoCount = 0;
+            version++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    byte getOp(int slot) {
+        return op[slot];
+    }
+
+    String getId(int slot) {
+        return id[slot];
+    }
+
+    long getEpochDay(int slot, boolean after) {
+        return epochDay[slot * 2 + (after ? 1 : 0)];
+    }
+
+    // Whether the entry exists before (after = false) or after the change
+    boolean exists(int slot, boolean after) {
+        return op[slot] == UPDATE || (op[slot] == ADD) == after;
+    }
+
+    // Overwrites the changed fields of an existing row with their before or after values
+    void apply(int slot, boolean after, LogEntryStore store, int row) {
+        int side = slot * 2 + (after ? 1 : 0);
+        int mask = changed[slot];
+        store.set(row,
+                (mask & DAY) != 0 ? epochDay[side] : store.getEpochDay(row),
+                (mask & TIME) != 0 ? nanoOfDay[side] : store.getNanoOfDay(row),
+                (mask & MEAL) != 0 ? mealName(side) : store.getMealType(row),
+                (mask & FOOD) != 0 ? food[side] : store.getFood(row),
+                (mask & SERVINGS) != 0 ? servings[side] : store.getServings(row));
+    }
+
+    // Re-creates an ADD or DELETE slot's entry as a new row
+    int insert(int slot, boolean after, LogEntryStore store) {
+        int side = slot * 2 + (after ? 1 : 0);
+        return store.insert(id[slot], epochDay[side], nanoOfDay[side], mealName(side), food[side], servings[side]);
+    }
+
+    private void capture(int side, LogEntryStore store, int row) {
+        epochDay[side] = (int) store.getEpochDay(row);
+        nanoOfDay[side] = store.getNanoOfDay(row);
+        mealCode[side] = store.getMealTypeCode(row);
+        food[side] = store.getFood(row);
+        servings[side] = store.getServings(row);
+    }
+
+    private String mealName(int side) {
+        return SymbolTable.MEAL_TYPES.name(mealCode[side]);
+    }
+
+    private int slot(int offset) {
+        return (start + offset) % depth;
+    }
+}
@@ -0,0 +1,89 @@
+package backend.services;
+
+import backend.models.UserProfile;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+// Loads and saves the user profile in user_profile.json. Until one is saved, the
+// default profile is used.
+public class UserProfileService {
+    private static final String USER_PROFILE_FILE = "user_profile.json";
+    private static final String DEFAULT_NAME = "Default User";
+
+    // Directory holding the profile file; null for the working directory
+    private final File dataDirectory;
+    private UserProfile userProfile;
+
+    public UserProfileService() {
+        this(null);
+    }
+
+    public UserProfileService(File dataDirectory) {
+        this.dataDirectory = dataDirectory;
+        loadProfile();
+    }
+
+    public static UserProfile createDefaultProfile() {
+        return new UserProfile(DEFAULT_NAME, "Male", 30, 175, 70, 5);
+    }
+
+    private void loadProfile() {
+        File file = new File(dataDirectory, USER_PROFILE_FILE);
+        userProfile = createDefaultProfile();
+        if (!file.exists()) {
+            return;
+        }
+
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            UserProfile loaded = new UserProfile(
+                    json.getString("name"),
+                    json.getString("sex"),
+                    json.getInt("age"),
+                    json.getDouble("height"),
+                    json.getDouble("weight"),
+                    json.getInt("activityLevel"));
+            loaded.setCalorieCalculationMethod(json.optString("calorieCalculationMethod",
+                    loaded.getCalorieCalculationMethod()));
+            if (json.has("lastUpdated")) {
+                loaded.setLastUpdated(LocalDate.parse(json.getString("lastUpdated")));
+            }
+            userProfile = loaded;
+        } catch (IOException | JSONException | DateTimeParseException e) {
+            System.err.println("Error loading user profile: " + e.getMessage());
+        }
+    }
+
+    public void saveProfile() {
+        JSONObject json = new JSONObject();
+        json.put("name", userProfile.getName());
+        json.put("sex", userProfile.getSex());
+        json.put("age", userProfile.getAge());
+        json.put("height", userProfile.getHeight());
+        json.put("weight", userProfile.getWeight());
+        json.put("activityLevel", userProfile.getActivityLevel());
+        json.put("calorieCalculationMethod", userProfile.getCalorieCalculationMethod());
+        json.put("lastUpdated", userProfile.getLastUpdated().toString());
+
+        if (dataDirectory != null && !dataDirectory.isDirectory() && !dataDirectory.mkdirs()) {
+            System.err.println("Error creating directory " + dataDirectory.getPath());
+        }
+        try (FileWriter writer = new FileWriter(new File(dataDirectory, USER_PROFILE_FILE))) {
+            writer.write(json.toString(4));
+        } catch (IOException e) {
+            System.err.println("Error saving user profile: " + e.getMessage());
+        }
+    }
+
+    public UserProfile getProfile() {
+        return userProfile;
+    }
+}
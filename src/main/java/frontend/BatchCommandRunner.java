@@ -0,0 +1,210 @@
+package frontend;
+
+import backend.models.CalorieRangeSummary;
+import backend.models.Food;
+import backend.models.FoodComponent;
+import backend.services.FoodDatabaseService;
+import backend.services.FoodLogService;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Non-interactive counterpart of DietManagerCLI for scripts and nightly jobs.
+// Reads one command per line, fields separated by tabs; blank lines and lines
+// starting with # are skipped. Foods are given by id or name, keyword and
+// component lists are comma-separated.
+//
+//   food      <name> <caloriesPerServing> <keywords>
+//   recipe    <name> <keywords> <food>:<servings>,...
+//   log       <yyyy-MM-dd> <HH:mm> <mealType> <food> <servings>
+//   update    <entryId> <yyyy-MM-dd> <HH:mm> <mealType> <food> <servings>
+//   delete    <entryId>
+//   undo / redo
+//   day       <yyyy-MM-dd> [mealType]
+//   range     <start> <end>
+//   search    <keywords> [any]
+//
+// Each command prints one JSON line, {"line": n, "ok": true, ...} or
+// {"line": n, "ok": false, "error": "..."}; a failed command does not stop the run.
+// Nothing is persisted per command: the log journal is forced and the food
+// database saved (if foods were added) once at the end. The command rate,
+// including that flush, is reported on stderr.
+public class BatchCommandRunner {
+    private static final int OUTPUT_BUFFER = 64 * 1024;
+
+    private final FoodDatabaseService foodDbService;
+    private final FoodLogService logService;
+    private boolean foodsAdded;
+
+    public BatchCommandRunner(FoodDatabaseService foodDbService, FoodLogService logService) {
+        this.foodDbService = foodDbService;
+        this.logService = logService;
+    }
+
+    // Run every command from input, then flush. Returns the number of failed commands.
+    public int run(Reader input) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), OUTPUT_BUFFER));
+        BufferedReader reader = new BufferedReader(input, OUTPUT_BUFFER);
+        long start = System.nanoTime();
+        int commands = 0;
+        int failed = 0;
+        int lineNumber = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+
+            commands++;
+            JSONObject result = new JSONObject().put("line", lineNumber);
+            try {
+                execute(line.split("\t"), result);
+                result.put("ok", true);
+            } catch (RuntimeException e) {
+                failed++;
+                result.put("ok", false).put("error", e.getMessage() == null ? e.toString() : e.getMessage());
+            }
+            out.println(result);
+        }
+
+        if (foodsAdded) {
+            foodDbService.saveDatabase();
+        }
+        logService.saveLog();
+        out.flush();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Ran %d commands (%d failed) in %.2f s: %.0f commands/s%n",
+                commands, failed, seconds, commands / Math.max(seconds, 1e-9));
+        return failed;
+    }
+
+    private void execute(String[] fields, JSONObject result) {
+        switch (fields[0].trim()) {
+            case "food": {
+                arguments(fields, 3);
+                Food food = foodDbService.addBasicFood(fields[1], keywords(fields[3]), Double.parseDouble(fields[2]));
+                foodsAdded = true;
+                result.put("id", food.getId());
+                break;
+            }
+            case "recipe": {
+                arguments(fields, 3);
+                List<FoodComponent> components = new ArrayList<>();
+                for (String component : fields[3].split(",")) {
+                    int colon = component.lastIndexOf(':');
+                    if (colon < 0) {
+                        throw new IllegalArgumentException("Component needs <food>:<servings>: " + component);
+                    }
+                    components.add(new FoodComponent(food(component.substring(0, colon)),
+                            Double.parseDouble(component.substring(colon + 1))));
+                }
+                Food food = foodDbService.addCompositeFood(fields[1], keywords(fields[2]), components);
+                foodsAdded = true;
+                result.put("id", food.getId()).put("caloriesPerServing", food.getCaloriesPerServing());
+                break;
+            }
+            case "log": {
+                arguments(fields, 5);
+                result.put("id", logService.addEntry(LocalDate.parse(fields[1]), LocalTime.parse(fields[2]),
+                        fields[3], food(fields[4]), Double.parseDouble(fields[5])).getId());
+                break;
+            }
+            case "update": {
+                arguments(fields, 6);
+                if (!logService.updateEntry(fields[1], LocalDate.parse(fields[2]), LocalTime.parse(fields[3]),
+                        fields[4], food(fields[5]), Double.parseDouble(fields[6]))) {
+                    throw new IllegalArgumentException("No entry " + fields[1]);
+                }
+                break;
+            }
+            case "delete": {
+                arguments(fields, 1);
+                if (!logService.deleteEntry(fields[1])) {
+                    throw new IllegalArgumentException("No entry " + fields[1]);
+                }
+                break;
+            }
+            case "undo":
+                result.put("changed", logService.undo());
+                break;
+            case "redo":
+                result.put("changed", logService.redo());
+                break;
+            case "day": {
+                arguments(fields, 1);
+                LocalDate date = LocalDate.parse(fields[1]);
+                result.put("calories", fields.length > 2
+                        ? logService.calculateCaloriesByMealType(date, fields[2])
+                        : logService.calculateTotalCaloriesForDate(date));
+                break;
+            }
+            case "range": {
+                arguments(fields, 2);
+                CalorieRangeSummary summary = logService.getCalorieSummaryForRange(
+                        LocalDate.parse(fields[1]), LocalDate.parse(fields[2]));
+                result.put("totalCalories", summary.getTotalCalories())
+                        .put("loggedDays", summary.getLoggedDays())
+                        .put("minDailyCalories", summary.getMinDailyCalories())
+                        .put("maxDailyCalories", summary.getMaxDailyCalories())
+                        .put("averageDailyCalories", summary.getAverageDailyCalories());
+                break;
+            }
+            case "search": {
+                arguments(fields, 1);
+                List<Food> foods = fields.length > 2 && fields[2].equals("any")
+                        ? foodDbService.searchFoodsByAnyKeyword(keywords(fields[1]))
+                        : foodDbService.searchFoodsByAllKeywords(keywords(fields[1]));
+                JSONArray ids = new JSONArray();
+                for (Food food : foods) {
+                    ids.put(food.getId());
+                }
+                result.put("ids", ids);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown command " + fields[0]);
+        }
+    }
+
+    private static void arguments(String[] fields, int count) {
+        if (fields.length < count + 1) {
+            throw new IllegalArgumentException(fields[0] + " needs " + count + " tab-separated arguments");
+        }
+    }
+
+    private static List<String> keywords(String field) {
+        List<String> keywords = new ArrayList<>();
+        for (String keyword : field.split(",")) {
+            if (!keyword.isBlank()) {
+                keywords.add(keyword.trim());
+            }
+        }
+        return keywords;
+    }
+
+    private Food food(String idOrName) {
+        Food food = foodDbService.getFoodById(idOrName);
+        if (food == null) {
+            food = foodDbService.getFoodByName(idOrName);
+        }
+        if (food == null) {
+            throw new IllegalArgumentException("No food " + idOrName);
+        }
+        return food;
+    }
+}
@@ -1,5 +1,6 @@
 package frontend;
 
+import backend.metrics.Metrics;
 import backend.models.*;
 import backend.services.*;
 
@@ -11,21 +12,37 @@ import java.util.*;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 public class DietManagerCLI {
     private static final Scanner scanner = new Scanner(System.in);
     private static final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
+    // Root of the per-user directories used with --user
+    private static final String USERS_DIRECTORY = "users";
     
     private FoodDatabaseService foodDbService;
     private FoodLogService logService;
+    private UserProfileService profileService;
     private UserProfile userProfile;
     private LocalDate currentDate;
     
     public DietManagerCLI() {
-        foodDbService = new FoodDatabaseService();
-        logService = new FoodLogService(foodDbService);
+        this(new FoodDatabaseService(), null, new UserProfileService());
+    }
+    
+    // Work on the given services, e.g. those of a tenant; a null log service is
+    // created over the working directory
+    public DietManagerCLI(FoodDatabaseService foodDbService, FoodLogService logService,
+                          UserProfileService profileService) {
+        this.foodDbService = foodDbService;
+        this.logService = logService != null ? logService : new FoodLogService(foodDbService);
+        this.profileService = profileService;
         currentDate = LocalDate.now();
         
         // Try to load user profile or create a new one
@@ -33,9 +50,8 @@ public class DietManagerCLI {
     }
     
     private void loadOrCreateUserProfile() {
-        // In a real implementation, this would load from a file
-        // For now, we'll just create a default one
-        userProfile = new UserProfile("Default User", "Male", 30, 175, 70, 5);
+        // Falls back to the default profile until one is saved
+        userProfile = profileService.getProfile();
         System.out.println("User profile loaded or created.");
     }
     
@@ -67,6 +83,9 @@ public class DietManagerCLI {
                 case 6: // Save data
                     saveData();
                     break;
+                case 7: // View performance metrics
+                    viewMetrics();
+                    break;
                 case 0: // Exit
                     saveData();
                     exit = true;
@@ -87,6 +106,7 @@ public class DietManagerCLI {
         System.out.println("4. View Calories Summary");
         System.out.println("5. Change Current Date (Current: " + currentDate.format(dateFormatter) + ")");
         System.out.println("6. Save Data");
+        System.out.println("7. View Performance Metrics");
         System.out.println("0. Exit");
     }
     
@@ -294,6 +314,7 @@ public class DietManagerCLI {
             System.out.println("2. Add Food to Log");
             System.out.println("3. Delete Entry from Log");
             System.out.println("4. Undo Last Action");
+            System.out.println("5. Redo Last Undone Action");
             System.out.println("0. Back to Main Menu");
             
             int choice = getIntInput("Enter your choice: ");
@@ -311,6 +332,9 @@ public class DietManagerCLI {
                 case 4:
                     undoLastAction();
                     break;
+                case 5:
+                    redoLastAction();
+                    break;
                 case 0:
                     back = true;
                     break;
@@ -497,6 +521,19 @@ public class DietManagerCLI {
         }
     }
     
+    private void redoLastAction() {
+        if (logService.canRedo()) {
+            boolean redone = logService.redo();
+            if (redone) {
+                System.out.println("Last undone action redone successfully.");
+            } else {
+                System.out.println("Failed to redo last action.");
+            }
+        } else {
+            System.out.println("No actions to redo.");
+        }
+    }
+    
     private void manageUserProfile() {
         boolean back = false;
         while (!back) {
@@ -656,7 +693,6 @@ public class DietManagerCLI {
         
         if (choice.equalsIgnoreCase("y")) {
             LocalDate startDate = currentDate.minusDays(6);
-            Map<LocalDate, Double> dailyCalories = logService.getDailyCalorieSummary();
             
             System.out.println("\n===== WEEKLY CALORIES SUMMARY =====");
             System.out.printf("%-15s %-15s %-15s %-15s\n", "Date", "Consumed", "Target", "Difference");
@@ -664,7 +700,7 @@ public class DietManagerCLI {
             
             for (int i = 0; i <= 6; i++) {
                 LocalDate date = startDate.plusDays(i);
-                double consumed = dailyCalories.getOrDefault(date, 0.0);
+                double consumed = logService.calculateTotalCaloriesForDate(date);
                 double target = targetCalories; // Using current target for simplicity
                 double difference = target - consumed;
                 
@@ -692,9 +728,18 @@ public class DietManagerCLI {
         }
     }
     
+    private void viewMetrics() {
+        System.out.println("\n===== PERFORMANCE METRICS =====");
+        System.out.print(Metrics.report());
+        if (!Metrics.isEnabled()) {
+            System.out.println("Start with --metrics (or -Dyada.metrics=true) to record latencies.");
+        }
+    }
+    
     private void saveData() {
         foodDbService.saveDatabase();
         logService.saveLog();
+        profileService.saveProfile();
         System.out.println("All data saved successfully.");
     }
     
@@ -726,8 +771,74 @@ public class DietManagerCLI {
         return scanner.nextLine();
     }
     
-    public static void main(String[] args) {
-        DietManagerCLI cli = new DietManagerCLI();
-        cli.start();
+    // --metrics records operation latencies, publishes them over JMX and prints
+    // a snapshot on exit.
+    // --user <id> works on that user's log and profile under users/<id>, sharing
+    // the food database in the working directory.
+    // --batch [file] runs the commands in file (or stdin) without menus, see
+    // BatchCommandRunner; the exit status is 1 if any command failed.
+    public static void main(String[] args) throws IOException {
+        List<String> options = Arrays.asList(args);
+        boolean metrics = options.contains("--metrics");
+        if (metrics) {
+            Metrics.setEnabled(true);
+            Metrics.registerMBean();
+        }
+        
+        int batch = options.indexOf("--batch");
+        String batchFile = batch >= 0 && batch + 1 < args.length && !args[batch + 1].startsWith("--")
+                ? args[batch + 1] : null;
+        // Batch runs force the journal once at the end instead of every few records
+        FoodLogJournal.SyncPolicy syncPolicy = batch >= 0
+                ? FoodLogJournal.SyncPolicy.NONE : FoodLogJournal.SyncPolicy.BATCHED;
+        
+        FoodDatabaseService foodDbService = new FoodDatabaseService();
+        TenantRegistry registry = null;
+        TenantRegistry.Tenant tenant = null;
+        FoodLogService logService;
+        UserProfileService profileService;
+        int user = options.indexOf("--user");
+        if (user >= 0 && user + 1 < args.length) {
+            registry = new TenantRegistry(new File(USERS_DIRECTORY), foodDbService,
+                    TenantRegistry.DEFAULT_MEMORY_BUDGET, syncPolicy);
+            try {
+                tenant = registry.acquire(args[user + 1]);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+            logService = tenant.getFoodLog();
+            profileService = tenant.getProfileService();
+        } else {
+            logService = new FoodLogService(foodDbService, syncPolicy);
+            profileService = new UserProfileService();
+        }
+        
+        int failed = 0;
+        try {
+            if (batch >= 0) {
+                try (Reader input = batchFile == null
+                        ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                        : new FileReader(batchFile, StandardCharsets.UTF_8)) {
+                    failed = new BatchCommandRunner(foodDbService, logService).run(input);
+                }
+            } else {
+                new DietManagerCLI(foodDbService, logService, profileService).start();
+            }
+        } finally {
+            if (registry != null) {
+                registry.release(tenant);
+                registry.close();
+            } else {
+                logService.close();
+            }
+        }
+        
+        if (metrics) {
+            System.out.print(Metrics.report());
+        }
+        if (failed > 0) {
+            System.exit(1);
+        }
     }
 }
\ No newline at end of file
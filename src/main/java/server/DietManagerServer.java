@@ -0,0 +1,415 @@
+package server;
+
+import backend.metrics.Counter;
+import backend.metrics.LatencyHistogram;
+import backend.metrics.Metrics;
+import backend.models.CalorieRangeSummary;
+import backend.models.Food;
+import backend.models.FoodLogEntry;
+import backend.models.UserProfile;
+import backend.services.FoodDatabaseService;
+import backend.services.FoodLogJournal;
+import backend.services.FoodLogService;
+import backend.services.TenantRegistry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Local HTTP/JSON API over the food database and the users' food logs and
+// profiles, on the JDK's built-in HTTP server. Each request runs on its own
+// virtual thread, so blocking on journal writes or tenant loading is cheap.
+// Users are tenants of a TenantRegistry under <data>/users; the food database in
+// <data> is shared by all of them and only read.
+//
+//   java -cp target/classes:<json jar> server.DietManagerServer [--port 8080]
+//       [--data .] [--memory-budget-mb 256] [--backlog 10000] [--metrics]
+//
+// Dates are yyyy-MM-dd and times HH:mm. Errors are {"error": "..."} with a 4xx/5xx status.
+// Log entries are rejected with 400 unless their date is within 1900-2100, their
+// mealType is Breakfast, Lunch, Dinner, Snack or Other, and servings is positive.
+//   GET    /foods?q=kw1,kw2[&match=any][&limit=50]  keyword search, all keywords by default
+//   GET    /foods/{foodId}
+//   GET    /users/{user}/log?date=..[&meal=..]      entries of a day
+//   POST   /users/{user}/log                        {"date", "time", "mealType", "foodId", "servings"}
+//   PUT    /users/{user}/log/{entryId}              same body, every field required
+//   DELETE /users/{user}/log/{entryId}
+//   GET    /users/{user}/summary/day?date=..[&meal=..]
+//   GET    /users/{user}/summary/range?start=..&end=..
+//   GET    /users/{user}/summary/daily
+//   POST   /users/{user}/undo
+//   POST   /users/{user}/redo
+//   GET    /users/{user}/profile
+//   GET    /metrics                                 plain-text metrics report
+public class DietManagerServer {
+    private static final String USERS_DIRECTORY = "users";
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+    // Meal types are interned process-wide, so only the clients' own are accepted
+    private static final List<String> MEAL_TYPES = List.of("Breakfast", "Lunch", "Dinner", "Snack", "Other");
+    private static final LocalDate FIRST_DATE = LocalDate.of(1900, 1, 1);
+    private static final LocalDate LAST_DATE = LocalDate.of(2100, 12, 31);
+    private static final LatencyHistogram REQUEST_TIME = Metrics.histogram("http.request");
+    private static final Counter ERRORS = Metrics.counter("http.errors");
+
+    private final FoodDatabaseService foodDbService;
+    private final TenantRegistry registry;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+
+    public DietManagerServer(FoodDatabaseService foodDbService, TenantRegistry registry,
+                             InetSocketAddress address, int backlog) throws IOException {
+        this.foodDbService = foodDbService;
+        this.registry = registry;
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.httpServer = HttpServer.create(address, backlog);
+        httpServer.createContext("/", this::handle);
+        httpServer.setExecutor(executor);
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    // Stop accepting requests, wait up to delaySeconds for running ones, then
+    // flush and unload every tenant
+    public void stop(int delaySeconds) {
+        httpServer.stop(delaySeconds);
+        executor.close();
+        registry.close();
+    }
+
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = Metrics.start();
+        try {
+            Object body = route(exchange.getRequestMethod(), exchange.getRequestURI(), exchange);
+            if (body instanceof String) {
+                send(exchange, 200, "text/plain; charset=utf-8", (String) body);
+            } else {
+                send(exchange, 200, "application/json", body.toString());
+            }
+        } catch (ApiException e) {
+            ERRORS.increment();
+            send(exchange, e.status, "application/json", new JSONObject().put("error", e.getMessage()).toString());
+        } catch (JSONException | IllegalArgumentException | DateTimeParseException e) {
+            ERRORS.increment();
+            send(exchange, 400, "application/json", new JSONObject().put("error", e.getMessage()).toString());
+        } catch (RuntimeException e) {
+            ERRORS.increment();
+            System.err.println("Error handling " + exchange.getRequestURI() + ": " + e);
+            send(exchange, 500, "application/json", new JSONObject().put("error", "Internal error").toString());
+        } finally {
+            REQUEST_TIME.recordSince(start);
+        }
+    }
+
+    private Object route(String method, URI uri, HttpExchange exchange) {
+        String[] path = uri.getPath().replaceAll("^/+|/+$", "").split("/+");
+        Map<String, String> query = parseQuery(uri.getRawQuery());
+
+        if (path[0].equals("foods")) {
+            requireMethod(method, "GET");
+            if (path.length == 1) {
+                return searchFoods(query);
+            }
+            if (path.length == 2) {
+                return toJson(findFood(path[1]));
+            }
+        } else if (path[0].equals("metrics") && path.length == 1) {
+            requireMethod(method, "GET");
+            return Metrics.report();
+        } else if (path[0].equals("users") && path.length >= 3) {
+            TenantRegistry.Tenant tenant = registry.acquire(path[1]);
+            try {
+                return routeUser(method, Arrays.copyOfRange(path, 2, path.length), query, exchange, tenant);
+            } finally {
+                registry.release(tenant);
+            }
+        }
+        throw new ApiException(404, "Not found: " + uri.getPath());
+    }
+
+    private Object routeUser(String method, String[] path, Map<String, String> query, HttpExchange exchange,
+                             TenantRegistry.Tenant tenant) {
+        FoodLogService log = tenant.getFoodLog();
+        switch (path[0]) {
+            case "log":
+                if (path.length == 1 && method.equals("GET")) {
+                    LocalDate date = LocalDate.parse(required(query, "date"));
+                    List<FoodLogEntry> entries = query.containsKey("meal")
+                            ? log.getEntriesByMealType(date, query.get("meal"))
+                            : log.getEntriesByDate(date);
+                    JSONArray array = new JSONArray();
+                    for (FoodLogEntry entry : entries) {
+                        array.put(toJson(entry));
+                    }
+                    return array;
+                }
+                if (path.length == 1 && method.equals("POST")) {
+                    JSONObject body = readBody(exchange);
+                    FoodLogEntry entry = log.addEntry(entryDate(body), LocalTime.parse(body.getString("time")),
+                            mealType(body), findFood(body.getString("foodId")), servings(body));
+                    return toJson(entry);
+                }
+                if (path.length == 2 && method.equals("PUT")) {
+                    JSONObject body = readBody(exchange);
+                    if (!log.updateEntry(path[1], entryDate(body), LocalTime.parse(body.getString("time")),
+                            mealType(body), findFood(body.getString("foodId")), servings(body))) {
+                        throw new ApiException(404, "No entry " + path[1]);
+                    }
+                    return new JSONObject().put("updated", path[1]);
+                }
+                if (path.length == 2 && method.equals("DELETE")) {
+                    if (!log.deleteEntry(path[1])) {
+                        throw new ApiException(404, "No entry " + path[1]);
+                    }
+                    return new JSONObject().put("deleted", path[1]);
+                }
+                break;
+            case "summary":
+                requireMethod(method, "GET");
+                if (path.length == 2 && path[1].equals("day")) {
+                    LocalDate date = LocalDate.parse(required(query, "date"));
+                    double calories = query.containsKey("meal")
+                            ? log.calculateCaloriesByMealType(date, query.get("meal"))
+                            : log.calculateTotalCaloriesForDate(date);
+                    return new JSONObject().put("date", date.toString()).put("calories", calories);
+                }
+                if (path.length == 2 && path[1].equals("range")) {
+                    return toJson(log.getCalorieSummaryForRange(LocalDate.parse(required(query, "start")),
+                            LocalDate.parse(required(query, "end"))));
+                }
+                if (path.length == 2 && path[1].equals("daily")) {
+                    JSONObject days = new JSONObject();
+                    for (Map.Entry<LocalDate, Double> day : log.getDailyCalorieSummary().entrySet()) {
+                        days.put(day.getKey().toString(), day.getValue());
+                    }
+                    return days;
+                }
+                break;
+            case "undo":
+                requireMethod(method, "POST");
+                return new JSONObject().put("undone", log.undo());
+            case "redo":
+                requireMethod(method, "POST");
+                return new JSONObject().put("redone", log.redo());
+            case "profile":
+                requireMethod(method, "GET");
+                return toJson(tenant.getProfile());
+            default:
+                break;
+        }
+        throw new ApiException(404, "Not found: " + exchange.getRequestURI().getPath());
+    }
+
+    private JSONArray searchFoods(Map<String, String> query) {
+        List<String> keywords = Arrays.asList(required(query, "q").split(","));
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_SEARCH_LIMIT;
+        List<Food> foods;
+        // The catalog is shared by every request thread
+        synchronized (foodDbService) {
+            foods = "any".equals(query.get("match"))
+                    ? foodDbService.searchFoodsByAnyKeyword(keywords)
+                    : foodDbService.searchFoodsByAllKeywords(keywords);
+        }
+
+        JSONArray array = new JSONArray();
+        for (int i = 0; i < foods.size() && i < limit; i++) {
+            array.put(toJson(foods.get(i)));
+        }
+        return array;
+    }
+
+    private Food findFood(String id) {
+        Food food;
+        synchronized (foodDbService) {
+            food = foodDbService.getFoodById(id);
+        }
+        if (food == null) {
+            throw new ApiException(404, "No food " + id);
+        }
+        return food;
+    }
+
+    private static LocalDate entryDate(JSONObject body) {
+        LocalDate date = LocalDate.parse(body.getString("date"));
+        if (date.isBefore(FIRST_DATE) || date.isAfter(LAST_DATE)) {
+            throw new ApiException(400, "Date out of range: " + date);
+        }
+        return date;
+    }
+
+    // The known meal type in its usual spelling
+    private static String mealType(JSONObject body) {
+        String mealType = body.getString("mealType").trim();
+        for (String known : MEAL_TYPES) {
+            if (known.equalsIgnoreCase(mealType)) {
+                return known;
+            }
+        }
+        throw new ApiException(400, "Unknown meal type " + mealType + "; use one of " + MEAL_TYPES);
+    }
+
+    private static double servings(JSONObject body) {
+        double servings = body.getDouble("servings");
+        if (!(servings > 0) || Double.isInfinite(servings)) {
+            throw new ApiException(400, "Servings must be a positive number");
+        }
+        return servings;
+    }
+
+    private static JSONObject toJson(Food food) {
+        return new JSONObject()
+                .put("id", food.getId())
+                .put("name", food.getName())
+                .put("keywords", food.getKeywords())
+                .put("caloriesPerServing", food.getCaloriesPerServing())
+                .put("isComposite", food.isComposite());
+    }
+
+    private static JSONObject toJson(FoodLogEntry entry) {
+        return new JSONObject()
+                .put("id", entry.getId())
+                .put("date", entry.getDate().toString())
+                .put("time", entry.getTime().toString())
+                .put("mealType", entry.getMealType())
+                .put("foodId", entry.getFood().getId())
+                .put("foodName", entry.getFood().getName())
+                .put("servings", entry.getServings())
+                .put("calories", entry.getTotalCalories());
+    }
+
+    private static JSONObject toJson(CalorieRangeSummary summary) {
+        return new JSONObject()
+                .put("start", summary.getStartDate().toString())
+                .put("end", summary.getEndDate().toString())
+                .put("totalCalories", summary.getTotalCalories())
+                .put("loggedDays", summary.getLoggedDays())
+                .put("minDailyCalories", summary.getMinDailyCalories())
+                .put("maxDailyCalories", summary.getMaxDailyCalories())
+                .put("averageDailyCalories", summary.getAverageDailyCalories());
+    }
+
+    private static JSONObject toJson(UserProfile profile) {
+        return new JSONObject()
+                .put("name", profile.getName())
+                .put("sex", profile.getSex())
+                .put("age", profile.getAge())
+                .put("height", profile.getHeight())
+                .put("weight", profile.getWeight())
+                .put("activityLevel", profile.getActivityLevel())
+                .put("calorieCalculationMethod", profile.getCalorieCalculationMethod())
+                .put("lastUpdated", profile.getLastUpdated().toString())
+                .put("dailyCalorieNeeds", profile.calculateDailyCalorieNeeds());
+    }
+
+    private static JSONObject readBody(HttpExchange exchange) {
+        try {
+            return new JSONObject(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new ApiException(400, "Could not read request body: " + e.getMessage());
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static String required(Map<String, String> query, String name) {
+        String value = query.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new ApiException(400, "Missing query parameter " + name);
+        }
+        return value;
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) {
+            throw new ApiException(405, "Use " + expected);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // A request that fails with a specific HTTP status
+    private static class ApiException extends RuntimeException {
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        File data = new File(".");
+        long memoryBudget = TenantRegistry.DEFAULT_MEMORY_BUDGET;
+        int backlog = 10_000;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--metrics")) {
+                Metrics.setEnabled(true);
+                Metrics.registerMBean();
+                continue;
+            }
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--port": port = Integer.parseInt(value); break;
+                case "--data": data = new File(value); break;
+                case "--memory-budget-mb": memoryBudget = Long.parseLong(value) * 1024 * 1024; break;
+                case "--backlog": backlog = Integer.parseInt(value); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+            i++;
+        }
+
+        FoodDatabaseService foodDbService = new FoodDatabaseService(data);
+        TenantRegistry registry = new TenantRegistry(new File(data, USERS_DIRECTORY), foodDbService,
+                memoryBudget, FoodLogJournal.SyncPolicy.BATCHED);
+        DietManagerServer server = new DietManagerServer(foodDbService, registry,
+                new InetSocketAddress("localhost", port), backlog);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(1)));
+        server.start();
+        System.out.println("Listening on http://localhost:" + server.getAddress().getPort());
+    }
+}
@@ -0,0 +1,275 @@
+package tools;
+
+import backend.models.Id;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// Writes large synthetic food_database.json and food_log.json files in the schemas
+// FoodDatabaseService and FoodLogService read, for scale and load testing.
+//
+//   java -cp target/classes:<json jar> tools.DataGenerator [--foods 200000]
+//       [--entries 5000000] [--start 2022-01-01] [--days 1095] [--seed 1]
+//       [--composite-percent 15] [--keywords 5000] [--out .]
+//
+// Output is streamed; only the calories and popularity of each food are held in memory.
+// The same arguments always produce byte-identical files: all randomness comes from
+// SplittableRandoms seeded from --seed, and ids are derived from the seed and the
+// record number instead of the clock. The catalog does not depend on the log options.
+//
+// Keywords and the foods chosen for log entries follow Zipf distributions, so a few
+// are very common and most are rare. Composites use 2-6 earlier foods, often other
+// composites, so recipes nest. Log entries are spread evenly over the days, with
+// times inside the usual window of their meal type.
+public class DataGenerator {
+    private static final String[] WORDS = {
+            "fruit", "vegetable", "meat", "protein", "dairy", "grain", "carb", "snack", "drink",
+            "breakfast", "lunch", "dinner", "dessert", "sweet", "salty", "spicy", "fresh", "frozen",
+            "baked", "fried", "grilled", "raw", "organic", "vegan", "vegetarian", "gluten-free",
+            "low-fat", "high-fiber", "soup", "salad", "sandwich", "pasta", "rice", "bread", "cheese",
+            "fish", "chicken", "beef", "pork", "egg", "nut", "bean", "sauce", "spread", "cereal"
+    };
+    private static final String[] ADJECTIVES = {
+            "Roasted", "Fresh", "Baked", "Grilled", "Spicy", "Sweet", "Smoked", "Steamed", "Crispy", "Creamy"
+    };
+    private static final String[] NOUNS = {
+            "Apple", "Chicken", "Rice", "Bread", "Salmon", "Tofu", "Pasta", "Cheese", "Yogurt", "Beans",
+            "Oats", "Potato", "Carrot", "Beef", "Egg", "Lentils", "Spinach", "Banana", "Almonds", "Corn"
+    };
+    private static final String[] MEAL_TYPES = {"Breakfast", "Lunch", "Dinner", "Snack", "Other"};
+    // Share of entries per meal type, in percent, and the hour window each falls into
+    private static final int[] MEAL_PERCENT = {22, 28, 30, 17, 3};
+    private static final int[][] MEAL_HOURS = {{6, 10}, {11, 14}, {17, 21}, {0, 24}, {0, 24}};
+    // Ids are stamped as if foods were created one millisecond apart from this instant
+    private static final long FOOD_EPOCH_MILLIS = 1_600_000_000_000L;
+    private static final long LOG_SEED_SALT = 0x5DEE_CE66_D1CE_4E5BL;
+
+    private int foods = 200_000;
+    private long entries = 5_000_000;
+    private LocalDate start = LocalDate.of(2022, 1, 1);
+    private int days = 3 * 365;
+    private long seed = 1;
+    private int compositePercent = 15;
+    private int keywords = 5000;
+    private File out = new File(".");
+
+    public static void main(String[] args) throws IOException {
+        DataGenerator generator = new DataGenerator();
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--foods": generator.foods = Integer.parseInt(value); break;
+                case "--entries": generator.entries = Long.parseLong(value); break;
+                case "--start": generator.start = LocalDate.parse(value); break;
+                case "--days": generator.days = Integer.parseInt(value); break;
+                case "--seed": generator.seed = Long.parseLong(value); break;
+                case "--composite-percent": generator.compositePercent = Integer.parseInt(value); break;
+                case "--keywords": generator.keywords = Integer.parseInt(value); break;
+                case "--out": generator.out = new File(value); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+            i++;
+        }
+
+        if (generator.foods < 1 || generator.days < 1 || generator.keywords < 1) {
+            System.err.println("--foods, --days and --keywords must be at least 1");
+            System.exit(1);
+        }
+        generator.out.mkdirs();
+
+        long startTime = System.nanoTime();
+        double[] calories = generator.writeFoods(new File(generator.out, "food_database.json"));
+        generator.writeLog(new File(generator.out, "food_log.json"), calories.length);
+        System.err.printf("Wrote %d foods and %d log entries in %.1f s%n", generator.foods, generator.entries,
+                (System.nanoTime() - startTime) / 1e9);
+    }
+
+    // Returns the calories per serving of every food, indexed by food number
+    double[] writeFoods(File file) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        Zipf keywordRanks = new Zipf(keywords, 1.0);
+        double[] calories = new double[foods];
+
+        try (Writer writer = open(file)) {
+            writer.write("[");
+            for (int i = 0; i < foods; i++) {
+                JSONObject food = new JSONObject();
+                food.put("id", foodId(i));
+                food.put("name", ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                        + NOUNS[random.nextInt(NOUNS.length)] + " " + i);
+
+                int keywordCount = 1 + random.nextInt(4);
+                int[] ranks = new int[keywordCount];
+                int distinct = 0;
+                for (int k = 0; k < keywordCount; k++) {
+                    int rank = keywordRanks.sample(random);
+                    if (indexOf(ranks, distinct, rank) < 0) {
+                        ranks[distinct++] = rank;
+                    }
+                }
+                String[] foodKeywords = new String[distinct];
+                for (int k = 0; k < distinct; k++) {
+                    foodKeywords[k] = keyword(ranks[k]);
+                }
+                food.put("keywords", foodKeywords);
+
+                boolean composite = i >= 10 && random.nextInt(100) < compositePercent;
+                if (composite) {
+                    int componentCount = 2 + random.nextInt(5);
+                    Object[] components = new Object[componentCount];
+                    double total = 0;
+                    for (int c = 0; c < componentCount; c++) {
+                        // Bias towards recent foods so composites of composites are common
+                        int target = random.nextInt(4) == 0 ? random.nextInt(i) : i - 1 - random.nextInt(Math.min(i, 50));
+                        double servings = 0.5 * (1 + random.nextInt(6));
+                        total += calories[target] * servings;
+                        components[c] = new JSONObject().put("foodId", foodId(target)).put("servings", servings);
+                    }
+                    food.put("components", components);
+                    calories[i] = total;
+                } else {
+                    calories[i] = 5 * (1 + random.nextInt(160));
+                }
+                food.put("caloriesPerServing", calories[i]);
+                food.put("isComposite", composite);
+
+                writer.write(i == 0 ? "\n    " : ",\n    ");
+                writer.write(food.toString());
+            }
+            writer.write("\n]\n");
+        }
+        return calories;
+    }
+
+    void writeLog(File file, int foodCount) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed ^ LOG_SEED_SALT);
+        Zipf popularity = new Zipf(foodCount, 0.9);
+        // Shuffle which foods are popular so it is not just the first ones
+        int[] foodsByRank = new int[foodCount];
+        for (int i = 0; i < foodCount; i++) {
+            foodsByRank[i] = i;
+        }
+        for (int i = foodCount - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = foodsByRank[i];
+            foodsByRank[i] = foodsByRank[j];
+            foodsByRank[j] = swap;
+        }
+
+        long written = 0;
+        try (Writer writer = open(file)) {
+            writer.write("[");
+            for (int d = 0; d < days; d++) {
+                LocalDate date = start.plusDays(d);
+                long dayEntries = (d + 1) * entries / days - d * entries / days;
+                long dayMillis = date.atStartOfDay().toInstant(ZoneOffset.UTC).toEpochMilli();
+
+                for (long e = 0; e < dayEntries; e++) {
+                    int meal = pickMeal(random);
+                    int[] hours = MEAL_HOURS[meal];
+                    long secondOfDay = hours[0] * 3600L + random.nextInt((hours[1] - hours[0]) * 3600);
+                    LocalTime time = LocalTime.ofSecondOfDay(secondOfDay);
+
+                    // Time-ordered id stamped with the entry's own date and time
+                    long high = ((dayMillis + secondOfDay * 1000) << 16) | (0x7L << 12) | random.nextInt(1 << 12);
+                    long low = (random.nextLong() >>> 2) | 0x8000_0000_0000_0000L;
+
+                    JSONObject entry = new JSONObject();
+                    entry.put("id", Id.toString(high, low));
+                    entry.put("date", date.toString());
+                    entry.put("time", time.toString());
+                    entry.put("mealType", MEAL_TYPES[meal]);
+                    entry.put("foodId", foodId(foodsByRank[popularity.sample(random)]));
+                    entry.put("servings", 0.5 * (1 + random.nextInt(6)));
+
+                    writer.write(written == 0 ? "\n    " : ",\n    ");
+                    writer.write(entry.toString());
+                    written++;
+                    if (written % 1_000_000 == 0) {
+                        System.err.println(written + " log entries written");
+                    }
+                }
+            }
+            writer.write("\n]\n");
+        }
+    }
+
+    private static Writer open(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()),
+                StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static int pickMeal(SplittableRandom random) {
+        int roll = random.nextInt(100);
+        for (int meal = 0; meal < MEAL_PERCENT.length; meal++) {
+            roll -= MEAL_PERCENT[meal];
+            if (roll < 0) {
+                return meal;
+            }
+        }
+        return MEAL_PERCENT.length - 1;
+    }
+
+    // Deterministic time-ordered id of food number i
+    private String foodId(int i) {
+        long mixed = mix(seed * 0x9E37_79B9_7F4A_7C15L + i);
+        long high = ((FOOD_EPOCH_MILLIS + i) << 16) | (0x7L << 12) | (mixed & 0xFFF);
+        long low = (mix(mixed) >>> 2) | 0x8000_0000_0000_0000L;
+        return Id.toString(high, low);
+    }
+
+    private static String keyword(int rank) {
+        return rank < WORDS.length ? WORDS[rank] : "tag" + rank;
+    }
+
+    private static int indexOf(int[] values, int count, int value) {
+        for (int i = 0; i < count; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58_476D_1CE4_E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D0_49BB_1331_11EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Zipf(n, s) over ranks 0..n-1 by inverse transform over the cumulative weights
+    private static class Zipf {
+        private final double[] cumulative;
+
+        Zipf(int n, double exponent) {
+            cumulative = new double[n];
+            double total = 0;
+            for (int rank = 0; rank < n; rank++) {
+                total += 1 / Math.pow(rank + 1, exponent);
+                cumulative[rank] = total;
+            }
+            for (int rank = 0; rank < n; rank++) {
+                cumulative[rank] /= total;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+        }
+    }
+}
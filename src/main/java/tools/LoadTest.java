@@ -0,0 +1,199 @@
+package tools;
+
+import backend.metrics.LatencyHistogram;
+import backend.metrics.Metrics;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Closed-loop load test for a running DietManagerServer. Each of --connections
+// clients is a virtual thread sending requests back to back, so that many requests
+// are in flight at all times. Requests go to --users users and mix day and range
+// summaries, day logs, food searches and entry adds. After --warmup seconds of
+// unrecorded traffic it measures for --seconds and reports requests/sec and
+// latency percentiles, overall and per request kind.
+//
+//   java -cp target/classes:<json jar> tools.LoadTest [--url http://localhost:8080]
+//       [--connections 10000] [--seconds 30] [--warmup 5] [--users 1000]
+//       [--write-percent 10] [--keywords fruit,vegetable,meat,protein,dairy,grain]
+//
+// Raise the open file limit (ulimit -n) above the connection count on both sides.
+// Entry adds need food ids, which are taken from a search for --keywords at start.
+public class LoadTest {
+    private static final String[] MEAL_TYPES = {"Breakfast", "Lunch", "Dinner", "Snack"};
+    private static final LocalDate FIRST_DAY = LocalDate.of(2025, 1, 1);
+    private static final int DAYS = 365;
+
+    private String url = "http://localhost:8080";
+    private int connections = 10_000;
+    private int seconds = 30;
+    private int warmup = 5;
+    private int users = 1000;
+    private int writePercent = 10;
+    private String keywords = "fruit,vegetable,meat,protein,dairy,grain";
+
+    private final Map<String, LatencyHistogram> latencies = new TreeMap<>();
+    private final LatencyHistogram total = Metrics.histogram("loadTest.all");
+    private final LongAdder errors = new LongAdder();
+    private final AtomicBoolean recording = new AtomicBoolean();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private HttpClient client;
+    private List<String> foodIds;
+
+    public static void main(String[] args) throws Exception {
+        LoadTest test = new LoadTest();
+        for (int i = 0; i < args.length; i++) {
+            String value = i + 1 < args.length ? args[i + 1] : null;
+            switch (args[i]) {
+                case "--url": test.url = value; break;
+                case "--connections": test.connections = Integer.parseInt(value); break;
+                case "--seconds": test.seconds = Integer.parseInt(value); break;
+                case "--warmup": test.warmup = Integer.parseInt(value); break;
+                case "--users": test.users = Integer.parseInt(value); break;
+                case "--write-percent": test.writePercent = Integer.parseInt(value); break;
+                case "--keywords": test.keywords = value; break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+            i++;
+        }
+        test.run();
+    }
+
+    void run() throws Exception {
+        for (String kind : new String[] {"day", "range", "log", "search", "add"}) {
+            latencies.put(kind, Metrics.histogram("loadTest." + kind));
+        }
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            client = HttpClient.newBuilder()
+                    .executor(executor)
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+            foodIds = findFoods();
+            if (foodIds.isEmpty()) {
+                System.err.println("No foods found for " + keywords + "; entry adds are skipped");
+            }
+
+            System.err.printf("%d connections, %d users, %d%% writes against %s%n",
+                    connections, users, foodIds.isEmpty() ? 0 : writePercent, url);
+            for (int i = 0; i < connections; i++) {
+                long seed = i;
+                executor.submit(() -> runClient(new SplittableRandom(seed)));
+            }
+
+            Thread.sleep(warmup * 1000L);
+            recording.set(true);
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            recording.set(false);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            running.set(false);
+            report(elapsed);
+        }
+    }
+
+    private List<String> findFoods() throws Exception {
+        List<String> ids = new ArrayList<>();
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(URI.create(url + "/foods?match=any&limit=1000&q=" + keywords)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 200) {
+            JSONArray foods = new JSONArray(response.body());
+            for (int i = 0; i < foods.length(); i++) {
+                ids.add(foods.getJSONObject(i).getString("id"));
+            }
+        }
+        return ids;
+    }
+
+    private void runClient(SplittableRandom random) {
+        while (running.get()) {
+            String user = url + "/users/load" + random.nextInt(users);
+            LocalDate day = FIRST_DAY.plusDays(random.nextInt(DAYS));
+            String kind;
+            HttpRequest.Builder request;
+            if (!foodIds.isEmpty() && random.nextInt(100) < writePercent) {
+                kind = "add";
+                JSONObject entry = new JSONObject()
+                        .put("date", day.toString())
+                        .put("time", String.format("%02d:%02d", random.nextInt(24), random.nextInt(60)))
+                        .put("mealType", MEAL_TYPES[random.nextInt(MEAL_TYPES.length)])
+                        .put("foodId", foodIds.get(random.nextInt(foodIds.size())))
+                        .put("servings", 0.5 * (1 + random.nextInt(4)));
+                request = HttpRequest.newBuilder(URI.create(user + "/log"))
+                        .POST(HttpRequest.BodyPublishers.ofString(entry.toString()));
+            } else {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        kind = "day";
+                        request = HttpRequest.newBuilder(URI.create(user + "/summary/day?date=" + day));
+                        break;
+                    case 1:
+                        kind = "range";
+                        request = HttpRequest.newBuilder(URI.create(user + "/summary/range?start=" + day
+                                + "&end=" + day.plusDays(30)));
+                        break;
+                    case 2:
+                        kind = "log";
+                        request = HttpRequest.newBuilder(URI.create(user + "/log?date=" + day));
+                        break;
+                    default:
+                        kind = "search";
+                        request = HttpRequest.newBuilder(URI.create(url + "/foods?q="
+                                + keywords.split(",")[random.nextInt(keywords.split(",").length)]));
+                        break;
+                }
+            }
+
+            long start = System.nanoTime();
+            boolean failed;
+            try {
+                HttpResponse<Void> response = client.send(request.build(), HttpResponse.BodyHandlers.discarding());
+                failed = response.statusCode() >= 400;
+            } catch (Exception e) {
+                failed = true;
+            }
+            long nanos = System.nanoTime() - start;
+            if (recording.get()) {
+                latencies.get(kind).record(nanos);
+                total.record(nanos);
+                if (failed) {
+                    errors.increment();
+                }
+            }
+        }
+    }
+
+    private void report(double elapsed) {
+        System.out.printf("%-8s %10s %10s %10s %10s %10s %10s%n",
+                "Request", "Count", "Req/s", "p50(ms)", "p90(ms)", "p99(ms)", "Max(ms)");
+        for (LatencyHistogram histogram : latencies.values()) {
+            print(histogram.getName().substring("loadTest.".length()), histogram, elapsed);
+        }
+        print("all", total, elapsed);
+        System.out.printf("Errors: %d in %.1f s%n", errors.sum(), elapsed);
+    }
+
+    private static void print(String kind, LatencyHistogram histogram, double elapsed) {
+        System.out.printf("%-8s %10d %10.0f %10.2f %10.2f %10.2f %10.2f%n",
+                kind, histogram.getCount(), histogram.getCount() / elapsed,
+                histogram.getPercentileNanos(50) / 1e6, histogram.getPercentileNanos(90) / 1e6,
+                histogram.getPercentileNanos(99) / 1e6, histogram.getMaxNanos() / 1e6);
+    }
+}
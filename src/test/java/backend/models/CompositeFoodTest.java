@@ -0,0 +1,47 @@
+package backend.models;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompositeFoodTest {
+    // The nested composite is read (and so cached) after its parent; a calorie
+    // change must still reach the parent although the nested cache was invalid
+    @Test
+    void calorieChangeReachesParentOfNestedComposite() {
+        BasicFood basic = new BasicFood("Bread", List.of("test"), 100);
+        CompositeFood nested = composite("Toast", basic, 1);
+        CompositeFood parent = composite("Breakfast", nested, 1);
+
+        assertEquals(100, parent.getCaloriesPerServing(), 1e-9);
+        basic.setCaloriesPerServing(200);
+        assertEquals(200, nested.getCaloriesPerServing(), 1e-9);
+        assertEquals(200, parent.getCaloriesPerServing(), 1e-9);
+
+        basic.setCaloriesPerServing(300);
+        assertEquals(300, parent.getCaloriesPerServing(), 1e-9);
+        assertEquals(300, nested.getCaloriesPerServing(), 1e-9);
+    }
+
+    // Two paths from the basic food to the top composite, each read separately
+    @Test
+    void calorieChangeReachesEveryPathOfSharedComponent() {
+        BasicFood basic = new BasicFood("Butter", List.of("test"), 50);
+        CompositeFood left = composite("Toast", basic, 2);
+        CompositeFood right = composite("Pancake", basic, 1);
+        CompositeFood top = new CompositeFood("Brunch", List.of("test"),
+                List.of(new FoodComponent(left, 1), new FoodComponent(right, 2)));
+
+        assertEquals(200, top.getCaloriesPerServing(), 1e-9);
+        basic.setCaloriesPerServing(10);
+        assertEquals(20, left.getCaloriesPerServing(), 1e-9);
+        assertEquals(40, top.getCaloriesPerServing(), 1e-9);
+        assertEquals(10, right.getCaloriesPerServing(), 1e-9);
+    }
+
+    private static CompositeFood composite(String name, Food food, double servings) {
+        return new CompositeFood(name, List.of("test"), List.of(new FoodComponent(food, servings)));
+    }
+}
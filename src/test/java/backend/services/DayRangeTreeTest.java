@@ -0,0 +1,90 @@
+package backend.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DayRangeTreeTest {
+    // Random days in clusters far apart, updated and queried against a TreeMap
+    @Test
+    void matchesTreeMapOverClusteredDays() {
+        Random random = new Random(7);
+        TreeMap<Long, Double> expected = new TreeMap<>();
+        long[] clusters = {-700_000, 20_000, 20_400, 2_900_000};
+        for (int i = 0; i < 500; i++) {
+            expected.put(clusters[random.nextInt(clusters.length)] + random.nextInt(300), 100.0 + random.nextInt(900));
+        }
+        DayRangeTree tree = tree(expected);
+        for (var day : expected.entrySet()) {
+            tree.load(day.getKey(), day.getValue());
+        }
+        tree.build();
+
+        for (int step = 0; step < 5000; step++) {
+            long day = clusters[random.nextInt(clusters.length)] + random.nextInt(300);
+            if (tree.covers(day)) {
+                if (random.nextBoolean()) {
+                    double calories = 100.0 + random.nextInt(900);
+                    tree.set(day, calories);
+                    expected.put(day, calories);
+                } else {
+                    tree.clear(day);
+                    expected.remove(day);
+                }
+            }
+
+            long from = clusters[random.nextInt(clusters.length)] + random.nextInt(400) - 50;
+            long to = from + random.nextInt(random.nextBoolean() ? 200 : 4_000_000);
+            double[] actual = tree.query(from, to);
+            double sum = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (double calories : expected.subMap(from, true, to, true).values()) {
+                sum += calories;
+                min = Math.min(min, calories);
+                max = Math.max(max, calories);
+            }
+            assertEquals(sum, actual[0], 1e-6);
+            assertEquals(expected.subMap(from, true, to, true).size(), (int) actual[1]);
+            assertEquals(min, actual[2]);
+            assertEquals(max, actual[3]);
+        }
+    }
+
+    // A mistyped year next to current data costs slots for the days, not the span
+    @Test
+    void sizeFollowsLoggedDaysNotTheirSpan() {
+        TreeMap<Long, Double> days = new TreeMap<>();
+        for (long day = 20_400; day < 20_430; day++) {
+            days.put(day, 500.0);
+        }
+        days.put(-365_000_000L, 100.0);
+        days.put(365_000_000L, 100.0);
+        DayRangeTree tree = tree(days);
+        assertTrue(tree.getMemoryBytes() < 64 * 1024, "memory " + tree.getMemoryBytes());
+
+        // Short gaps and the days after the last one have slots, distant ones do not
+        assertTrue(tree.covers(365_000_000L + DayRangeTree.HEADROOM));
+        assertFalse(tree.covers(365_000_000L + DayRangeTree.HEADROOM + 1));
+        assertFalse(tree.covers(20_000));
+        for (var day : days.entrySet()) {
+            tree.load(day.getKey(), day.getValue());
+        }
+        tree.build();
+        assertEquals(32, (int) tree.query(Long.MIN_VALUE, Long.MAX_VALUE)[1]);
+    }
+
+    private static DayRangeTree tree(TreeMap<Long, Double> days) {
+        long[] logged = new long[days.size()];
+        int i = 0;
+        for (long day : days.keySet()) {
+            logged[i++] = day;
+        }
+        return new DayRangeTree(logged, logged.length);
+    }
+}
@@ -0,0 +1,140 @@
+package backend.services;
+
+import backend.models.Id;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FoodLogBinaryFormatTest {
+    // Rows per block written by FoodLogBinaryFormat
+    private static final int BLOCK_ENTRIES = 4096;
+    private static final String[] MEAL_TYPES = {"Breakfast", "Lunch", "Dinner", "Snack"};
+
+    @TempDir
+    File directory;
+
+    @Test
+    void roundTripsEveryColumn() throws IOException {
+        Path path = new File(directory, "food_log.bin").toPath();
+        List<LogRow> rows = rows(2 * BLOCK_ENTRIES + 17);
+        FoodLogBinaryFormat.write(path, rows);
+        assertTrue(FoodLogBinaryFormat.isBinary(path));
+
+        List<LogRow> read = new ArrayList<>();
+        FoodLogBinaryFormat.read(path, read::add);
+        assertEquals(rows.size(), read.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertSameRow(rows.get(i), read.get(i));
+        }
+    }
+
+    @Test
+    void roundTripsEmptyLog() throws IOException {
+        Path path = new File(directory, "food_log.bin").toPath();
+        FoodLogBinaryFormat.write(path, new ArrayList<>());
+
+        List<LogRow> read = new ArrayList<>();
+        FoodLogBinaryFormat.read(path, read::add);
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    void rejectsDamagedBlockAfterDeliveringEarlierOnes() throws IOException {
+        Path path = new File(directory, "food_log.bin").toPath();
+        List<LogRow> rows = rows(2 * BLOCK_ENTRIES);
+        FoodLogBinaryFormat.write(path, rows);
+
+        // Flip a servings byte near the end of the file, inside the second block
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            long at = file.length() - 4 - 8;
+            file.seek(at);
+            int b = file.read();
+            file.seek(at);
+            file.write(b ^ 0x40);
+        }
+
+        List<LogRow> read = new ArrayList<>();
+        IOException e = assertThrows(IOException.class, () -> FoodLogBinaryFormat.read(path, read::add));
+        assertTrue(e.getMessage().contains("block 1"), e.getMessage());
+        assertEquals(BLOCK_ENTRIES, read.size());
+        assertSameRow(rows.get(BLOCK_ENTRIES - 1), read.get(BLOCK_ENTRIES - 1));
+    }
+
+    @Test
+    void rejectsDamagedHeader() throws IOException {
+        Path path = new File(directory, "food_log.bin").toPath();
+        FoodLogBinaryFormat.write(path, rows(10));
+
+        // The entry count, first field after the block size
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.seek(12 + 4 + 3);
+            file.write(11);
+        }
+
+        List<LogRow> read = new ArrayList<>();
+        assertThrows(IOException.class, () -> FoodLogBinaryFormat.read(path, read::add));
+        assertTrue(read.isEmpty());
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws IOException {
+        Path path = new File(directory, "food_log.bin").toPath();
+        FoodLogBinaryFormat.write(path, rows(BLOCK_ENTRIES + 1));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 10);
+        }
+
+        List<LogRow> read = new ArrayList<>();
+        assertThrows(IOException.class, () -> FoodLogBinaryFormat.read(path, read::add));
+        assertEquals(BLOCK_ENTRIES, read.size());
+    }
+
+    @Test
+    void leavesNoTempFileBehind() throws IOException {
+        Path path = new File(directory, "food_log.bin").toPath();
+        FoodLogBinaryFormat.write(path, rows(3));
+        FoodLogBinaryFormat.write(path, rows(5));
+
+        assertFalse(new File(directory, "food_log.bin.tmp").exists());
+        List<LogRow> read = new ArrayList<>();
+        FoodLogBinaryFormat.read(path, read::add);
+        assertEquals(5, read.size());
+    }
+
+    // Mostly UUID ids with some free-form ones, several foods and meal types
+    private static List<LogRow> rows(int count) {
+        Random random = new Random(count);
+        List<LogRow> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = i % 50 == 7 ? "legacy-" + i : Id.toString(random.nextLong(), random.nextLong());
+            rows.add(new LogRow(id,
+                    20_000 + random.nextInt(1000),
+                    random.nextInt(86_400) * 1_000_000_000L + random.nextInt(1_000_000),
+                    MEAL_TYPES[random.nextInt(MEAL_TYPES.length)],
+                    "food-" + random.nextInt(200),
+                    0.25 * (1 + random.nextInt(12))));
+        }
+        return rows;
+    }
+
+    private static void assertSameRow(LogRow expected, LogRow actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.epochDay, actual.epochDay);
+        assertEquals(expected.nanoOfDay, actual.nanoOfDay);
+        assertEquals(expected.mealType, actual.mealType);
+        assertEquals(expected.foodId, actual.foodId);
+        assertEquals(expected.servings, actual.servings);
+    }
+}
@@ -0,0 +1,118 @@
+package backend.services;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FoodLogJournalTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void replaysRecordsInWriteOrder() throws IOException {
+        File file = new File(directory, "food_log.journal");
+        FoodLogJournal journal = new FoodLogJournal(file.getPath(), FoodLogJournal.SyncPolicy.BATCHED);
+        // Enough records to cross the read buffer several times
+        for (int i = 0; i < 5000; i++) {
+            journal.append(record(i));
+        }
+        assertEquals(file.length(), journal.getSize());
+        journal.close();
+
+        FoodLogJournal reopened = new FoodLogJournal(file.getPath(), FoodLogJournal.SyncPolicy.BATCHED);
+        List<JSONObject> records = replay(reopened);
+        assertEquals(5000, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("entry-" + i, records.get(i).getString("id"));
+            assertEquals(i, records.get(i).getInt("servings"));
+        }
+        assertEquals(5000, reopened.getRecordCount());
+        assertEquals(file.length(), reopened.getSize());
+    }
+
+    @Test
+    void discardsTornRecordAndAppendsAfterIt() throws IOException {
+        File file = new File(directory, "food_log.journal");
+        FoodLogJournal journal = new FoodLogJournal(file.getPath(), FoodLogJournal.SyncPolicy.EVERY_WRITE);
+        for (int i = 0; i < 3; i++) {
+            journal.append(record(i));
+        }
+        journal.close();
+        long goodLength = file.length();
+
+        // A crash in the middle of the fourth record
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write("{\"op\":\"put\",\"id\":\"entry-3\",\"serv".getBytes(StandardCharsets.UTF_8));
+        }
+
+        FoodLogJournal reopened = new FoodLogJournal(file.getPath(), FoodLogJournal.SyncPolicy.EVERY_WRITE);
+        assertEquals(3, replay(reopened).size());
+        assertEquals(goodLength, file.length());
+        assertEquals(goodLength, reopened.getSize());
+
+        reopened.append(record(4));
+        reopened.close();
+        List<JSONObject> records = replay(new FoodLogJournal(file.getPath(), FoodLogJournal.SyncPolicy.EVERY_WRITE));
+        assertEquals(4, records.size());
+        assertEquals("entry-4", records.get(3).getString("id"));
+    }
+
+    @Test
+    void skipsCorruptRecordInTheMiddle() throws IOException {
+        File file = new File(directory, "food_log.journal");
+        Files.write(file.toPath(), (record(0) + "\n{not json\n\n" + record(1) + "\n").getBytes(StandardCharsets.UTF_8));
+
+        List<JSONObject> records = replay(new FoodLogJournal(file.getPath(), FoodLogJournal.SyncPolicy.NONE));
+        assertEquals(2, records.size());
+        assertEquals("entry-1", records.get(1).getString("id"));
+    }
+
+    @Test
+    void replaysSealedSegmentsBeforeTheActiveOne() throws IOException {
+        File file = new File(directory, "food_log.journal");
+        FoodLogJournal journal = new FoodLogJournal(file.getPath(), FoodLogJournal.SyncPolicy.NONE);
+        assertFalse(journal.rotate());
+
+        journal.append(record(0));
+        journal.append(record(1));
+        assertTrue(journal.rotate());
+        assertEquals(0, journal.getSize());
+        assertEquals(0, journal.getRecordCount());
+        journal.append(record(2));
+        assertTrue(journal.rotate());
+        journal.append(record(3));
+        journal.sync();
+
+        assertEquals(2, journal.getSealedSegments().size());
+        assertEquals(file.length(), journal.getSize());
+        journal.close();
+
+        List<JSONObject> records = replay(new FoodLogJournal(file.getPath(), FoodLogJournal.SyncPolicy.NONE));
+        assertEquals(4, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals("entry-" + i, records.get(i).getString("id"));
+        }
+    }
+
+    private static JSONObject record(int i) {
+        return new JSONObject().put("op", "put").put("id", "entry-" + i).put("servings", i);
+    }
+
+    private static List<JSONObject> replay(FoodLogJournal journal) throws IOException {
+        List<JSONObject> records = new ArrayList<>();
+        journal.replay(records::add);
+        return records;
+    }
+}
@@ -0,0 +1,150 @@
+package backend.services;
+
+import backend.models.BasicFood;
+import backend.models.Food;
+import backend.models.FoodLogEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FoodLogServiceStressTest {
+    private static final String[] MEAL_TYPES = {"Breakfast", "Lunch", "Dinner", "Snack"};
+    private static final LocalDate FIRST_DAY = LocalDate.of(2025, 1, 1);
+    private static final int DAYS = 120;
+    private static final int WRITERS = 6;
+    private static final int OPERATIONS = 3000;
+
+    @TempDir
+    File directory;
+
+    // Writers add, update, delete, undo and redo on overlapping days and entries
+    // while readers take range summaries and consistency checks. Afterwards the
+    // stripes, date indexes and range tree must agree, and so must a reopened log.
+    // Food calories only change at the end: a change is not atomic with the version
+    // bump that marks totals stale, so a check in between would see a false mismatch.
+    @Test
+    void staysConsistentUnderConcurrentChanges() throws Exception {
+        Files.writeString(new File(directory, "food_database.json").toPath(), "[]");
+        FoodDatabaseService db = new FoodDatabaseService(directory);
+        List<Food> foods = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            foods.add(db.addBasicFood("Food " + i, List.of("test"), 50 + 10 * i));
+        }
+        FoodLogService log = open(db);
+        List<String> ids = new CopyOnWriteArrayList<>();
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + 2);
+        List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            Random random = new Random(t);
+            writers.add(executor.submit(() -> {
+                for (int i = 0; i < OPERATIONS; i++) {
+                    change(log, random, foods, ids);
+                }
+                return null;
+            }));
+        }
+        Future<?> reader = executor.submit(() -> {
+            Random random = new Random(100);
+            while (writing.get()) {
+                LocalDate start = FIRST_DAY.plusDays(random.nextInt(DAYS));
+                log.getCalorieSummaryForRange(start, start.plusDays(random.nextInt(60)));
+                log.calculateTotalCaloriesForDate(start);
+            }
+            return null;
+        });
+        Future<?> checker = executor.submit(() -> {
+            while (writing.get()) {
+                log.checkConsistency();
+                Thread.sleep(5);
+            }
+            return null;
+        });
+
+        for (Future<?> writer : writers) {
+            writer.get();
+        }
+        writing.set(false);
+        reader.get();
+        checker.get();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        log.checkConsistency();
+        // Stale totals are recomputed on the next change or read
+        ((BasicFood) foods.get(0)).setCaloriesPerServing(75);
+        log.addEntry(FIRST_DAY, LocalTime.NOON, "Lunch", foods.get(0), 1);
+        log.checkConsistency();
+        Map<String, String> entries = snapshot(log);
+        double total = 0;
+        for (FoodLogEntry entry : log.getAllEntries()) {
+            total += entry.getTotalCalories();
+        }
+        double daily = 0;
+        for (double calories : log.getDailyCalorieSummary().values()) {
+            daily += calories;
+        }
+        assertEquals(total, daily, 1e-6);
+        assertEquals(total, log.calculateTotalCaloriesForRange(FIRST_DAY.minusDays(1), FIRST_DAY.plusDays(DAYS)), 1e-6);
+        log.close();
+
+        FoodLogService reopened = open(db);
+        reopened.checkConsistency();
+        assertEquals(entries, snapshot(reopened));
+        reopened.close();
+    }
+
+    private static void change(FoodLogService log, Random random, List<Food> foods, List<String> ids) {
+        LocalDate date = FIRST_DAY.plusDays(random.nextInt(DAYS));
+        LocalTime time = LocalTime.of(random.nextInt(24), random.nextInt(60));
+        String mealType = MEAL_TYPES[random.nextInt(MEAL_TYPES.length)];
+        Food food = foods.get(random.nextInt(foods.size()));
+        double servings = 0.5 * (1 + random.nextInt(6));
+        int action = random.nextInt(20);
+        if (action < 8 || ids.isEmpty()) {
+            ids.add(log.addEntry(date, time, mealType, food, servings).getId());
+        } else if (action < 12) {
+            // Ids may be gone already through another thread's delete or undo
+            log.updateEntry(ids.get(random.nextInt(ids.size())), date, time, mealType, food, servings);
+        } else if (action < 15) {
+            log.deleteEntry(ids.get(random.nextInt(ids.size())));
+        } else if (action < 18) {
+            log.undo();
+        } else {
+            log.redo();
+        }
+    }
+
+    private FoodLogService open(FoodDatabaseService db) {
+        return new FoodLogService(db, directory, FoodLogJournal.SyncPolicy.NONE,
+                FoodLogCompactor.Trigger.never(), FoodLogCompactor.SnapshotFormat.BINARY);
+    }
+
+    private static Map<String, String> snapshot(FoodLogService log) {
+        Map<String, String> entries = new TreeMap<>();
+        for (FoodLogEntry entry : log.getAllEntries()) {
+            entries.put(entry.getId(), entry.getDate() + " " + entry.getTime() + " " + entry.getMealType()
+                    + " " + entry.getFood().getId() + " " + entry.getServings());
+        }
+        return entries;
+    }
+}
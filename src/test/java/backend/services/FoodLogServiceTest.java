@@ -0,0 +1,166 @@
+package backend.services;
+
+import backend.models.BasicFood;
+import backend.models.Food;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FoodLogServiceTest {
+    private static final LocalDate FIRST_DAY = LocalDate.of(2025, 3, 1);
+
+    @TempDir
+    File directory;
+
+    // After a calorie change the first read of each kind re-sums the stale days and
+    // stores the result; the same reads afterwards are answered from the totals
+    @Test
+    void repairsStaleTotalsOnFirstRead() throws IOException {
+        FoodDatabaseService db = database();
+        BasicFood food = (BasicFood) db.addBasicFood("Bread", List.of("test"), 100);
+        FoodLogService log = open(db);
+        for (int day = 0; day < 40; day++) {
+            log.addEntry(FIRST_DAY.plusDays(day), LocalTime.NOON, "Lunch", food, 2);
+            log.addEntry(FIRST_DAY.plusDays(day), LocalTime.of(19, 0), "Dinner", food, 1);
+        }
+
+        food.setCaloriesPerServing(150);
+        assertEquals(450, log.calculateTotalCaloriesForDate(FIRST_DAY), 1e-9);
+        long recomputed = log.getRecomputedRows();
+        assertEquals(450, log.calculateTotalCaloriesForDate(FIRST_DAY), 1e-9);
+        assertEquals(150, log.calculateCaloriesByMealType(FIRST_DAY, "Dinner"), 1e-9);
+        assertEquals(recomputed, log.getRecomputedRows());
+
+        Map<LocalDate, Double> daily = log.getDailyCalorieSummary();
+        assertEquals(40, daily.size());
+        assertEquals(450, daily.get(FIRST_DAY.plusDays(39)), 1e-9);
+        recomputed = log.getRecomputedRows();
+        assertEquals(daily, log.getDailyCalorieSummary());
+        assertEquals(40 * 450, log.calculateTotalCaloriesForRange(FIRST_DAY, FIRST_DAY.plusDays(39)), 1e-9);
+        assertEquals(recomputed, log.getRecomputedRows());
+        log.checkConsistency();
+        log.close();
+    }
+
+    // Entries written through the queued journal come back in the same state
+    @Test
+    void journaledChangesSurviveReopen() throws IOException {
+        FoodDatabaseService db = database();
+        Food food = db.addBasicFood("Rice", List.of("test"), 200);
+        FoodLogService log = open(db);
+        String kept = log.addEntry(FIRST_DAY, LocalTime.NOON, "Lunch", food, 1).getId();
+        String deleted = log.addEntry(FIRST_DAY, LocalTime.NOON, "Lunch", food, 1).getId();
+        log.updateEntry(kept, FIRST_DAY.plusDays(3), LocalTime.of(8, 0), "Breakfast", food, 2);
+        log.deleteEntry(deleted);
+        log.undo();
+        log.redo();
+        log.close();
+
+        FoodLogService reopened = open(db);
+        assertEquals(1, reopened.getAllEntries().size());
+        assertEquals(kept, reopened.getEntriesByDate(FIRST_DAY.plusDays(3)).get(0).getId());
+        assertEquals(400, reopened.calculateTotalCaloriesForDate(FIRST_DAY.plusDays(3)), 1e-9);
+        reopened.close();
+    }
+
+    // Well-formed records whose date or time does not parse are skipped one by
+    // one instead of failing the whole load
+    @Test
+    void skipsJournalRecordsWithUnparseableDates() throws IOException {
+        FoodDatabaseService db = database();
+        Food food = db.addBasicFood("Apple", List.of("test"), 80);
+        FoodLogService log = open(db);
+        String kept = log.addEntry(FIRST_DAY, LocalTime.NOON, "Lunch", food, 1).getId();
+        String badDate = log.addEntry(FIRST_DAY.plusDays(1), LocalTime.NOON, "Lunch", food, 1).getId();
+        String badTime = log.addEntry(FIRST_DAY.plusDays(2), LocalTime.NOON, "Lunch", food, 1).getId();
+        log.close();
+
+        File journal = new File(directory, "food_log.journal");
+        List<String> records = new ArrayList<>();
+        for (String line : Files.readAllLines(journal.toPath())) {
+            if (line.contains(badDate)) {
+                line = line.replace(FIRST_DAY.plusDays(1).toString(), "2025-13-45");
+            } else if (line.contains(badTime)) {
+                line = line.replace("12:00", "25:61");
+            }
+            records.add(line);
+        }
+        Files.write(journal.toPath(), records);
+
+        FoodLogService reopened = open(db);
+        assertEquals(1, reopened.getAllEntries().size());
+        assertEquals(kept, reopened.getAllEntries().get(0).getId());
+        reopened.close();
+    }
+
+    // A depth given to the constructor is kept and bounds the undo history
+    @Test
+    void constructorSizesUndoHistory() throws IOException {
+        FoodDatabaseService db = database();
+        Food food = db.addBasicFood("Pear", List.of("test"), 60);
+        FoodLogService log = new FoodLogService(db, directory, FoodLogJournal.SyncPolicy.NONE,
+                FoodLogCompactor.Trigger.never(), FoodLogCompactor.SnapshotFormat.BINARY, 3);
+        assertEquals(3, log.getUndoDepth());
+        for (int i = 0; i < 5; i++) {
+            log.addEntry(FIRST_DAY, LocalTime.NOON, "Lunch", food, 1);
+        }
+        int undone = 0;
+        while (log.undo()) {
+            undone++;
+        }
+        assertEquals(3, undone);
+        assertEquals(2, log.getAllEntries().size());
+        log.close();
+    }
+
+    // Converting a JSON snapshot to binary removes the JSON one, so a later start
+    // in JSON format builds on the binary snapshot instead of the stale file
+    @Test
+    void convertedSnapshotReplacesTheOldFormat() throws IOException {
+        FoodDatabaseService db = database();
+        Food food = db.addBasicFood("Oats", List.of("test"), 150);
+        FoodLogService log = open(db, FoodLogCompactor.SnapshotFormat.JSON);
+        log.addEntry(FIRST_DAY, LocalTime.NOON, "Breakfast", food, 1);
+        log.compactLog();
+        log.close();
+        assertTrue(new File(directory, "food_log.json").exists());
+
+        FoodLogService binary = open(db, FoodLogCompactor.SnapshotFormat.BINARY);
+        binary.addEntry(FIRST_DAY.plusDays(1), LocalTime.NOON, "Breakfast", food, 2);
+        binary.compactLog();
+        binary.close();
+        assertTrue(new File(directory, "food_log.bin").exists());
+        assertFalse(new File(directory, "food_log.json").exists());
+
+        FoodLogService json = open(db, FoodLogCompactor.SnapshotFormat.JSON);
+        assertEquals(2, json.getAllEntries().size());
+        assertEquals(300, json.calculateTotalCaloriesForDate(FIRST_DAY.plusDays(1)), 1e-9);
+        json.close();
+    }
+
+    private FoodDatabaseService database() throws IOException {
+        Files.writeString(new File(directory, "food_database.json").toPath(), "[]");
+        return new FoodDatabaseService(directory);
+    }
+
+    private FoodLogService open(FoodDatabaseService db) {
+        return open(db, FoodLogCompactor.SnapshotFormat.BINARY);
+    }
+
+    private FoodLogService open(FoodDatabaseService db, FoodLogCompactor.SnapshotFormat format) {
+        return new FoodLogService(db, directory, FoodLogJournal.SyncPolicy.NONE,
+                FoodLogCompactor.Trigger.never(), format);
+    }
+}
@@ -0,0 +1,174 @@
+package backend.services;
+
+import backend.models.BasicFood;
+import backend.models.Food;
+import backend.models.Id;
+import backend.models.SymbolTable;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogEntryStoreTest {
+    private static final String[] MEAL_TYPES = {"Breakfast", "Lunch", "Dinner", "Snack"};
+
+    // Random inserts, replacements and deletes checked against a LinkedHashMap, so
+    // that backward-shift deletion in the id table is exercised across rehashes
+    @Test
+    void idTableMatchesHashMapUnderRandomInsertsAndDeletes() {
+        Random random = new Random(42);
+        List<Food> foods = foods();
+        LogEntryStore store = new LogEntryStore();
+        Map<String, LogRow> expected = new LinkedHashMap<>();
+        Map<String, Food> expectedFoods = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+
+        for (int step = 0; step < 200_000; step++) {
+            int action = random.nextInt(10);
+            if (action < 5 || ids.isEmpty()) {
+                // Few high bits vary, so many ids share probe chains
+                String id = random.nextInt(20) == 0
+                        ? "legacy-" + step
+                        : Id.toString(random.nextInt(4), random.nextLong() & 0xFFFF_0000_0000_FFFFL);
+                if (expected.containsKey(id)) {
+                    continue;
+                }
+                LogRow row = row(random, id);
+                Food food = foods.get(random.nextInt(foods.size()));
+                store.insert(id, row.epochDay, row.nanoOfDay, row.mealType, food, row.servings);
+                expected.put(id, row);
+                expectedFoods.put(id, food);
+                ids.add(id);
+            } else if (action < 7) {
+                String id = ids.get(random.nextInt(ids.size()));
+                LogRow row = row(random, id);
+                Food food = foods.get(random.nextInt(foods.size()));
+                store.set(store.find(id), row.epochDay, row.nanoOfDay, row.mealType, food, row.servings);
+                expected.put(id, row);
+                expectedFoods.put(id, food);
+            } else {
+                String id = ids.remove(random.nextInt(ids.size()));
+                int found = store.find(id);
+                assertTrue(found >= 0, id);
+                store.delete(found);
+                expected.remove(id);
+                expectedFoods.remove(id);
+                assertEquals(-1, store.find(id));
+            }
+
+            if (step % 20_000 == 0) {
+                assertSameContents(store, expected, expectedFoods);
+            }
+        }
+        assertSameContents(store, expected, expectedFoods);
+    }
+
+    @Test
+    void rowsKeepInsertionOrderAcrossReuseAndReplacement() {
+        List<Food> foods = foods();
+        LogEntryStore store = new LogEntryStore();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String id = Id.toString(1, i);
+            store.insert(id, 20_000, 0, "Lunch", foods.get(0), 1);
+            ids.add(id);
+        }
+        for (int i = 0; i < 100; i += 3) {
+            store.delete(store.find(ids.get(i)));
+        }
+        // New rows reuse the freed slots but still come last
+        for (int i = 100; i < 120; i++) {
+            String id = Id.toString(1, i);
+            store.insert(id, 20_001, 0, "Dinner", foods.get(1), 2);
+            ids.add(id);
+        }
+        store.set(store.find(ids.get(1)), 20_005, 5, "Snack", foods.get(2), 3);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (i >= 100 || i % 3 != 0) {
+                expected.add(ids.get(i));
+            }
+        }
+        List<String> actual = new ArrayList<>();
+        for (int row : store.rowsInOrder()) {
+            actual.add(store.getId(row));
+        }
+        assertEquals(expected, actual);
+        assertEquals("Snack", store.getMealType(store.find(ids.get(1))));
+        assertEquals(5, store.getNanoOfDay(store.find(ids.get(1))));
+    }
+
+    // A rejected row must not leave its id behind
+    @Test
+    void rejectedInsertLeavesNoRow() {
+        Food food = foods().get(0);
+        LogEntryStore store = new LogEntryStore();
+        String id = Id.toString(1, 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> store.insert(id, Integer.MAX_VALUE + 1L, 0, "Lunch", food, 1));
+        assertEquals(0, store.size());
+        assertEquals(-1, store.find(id));
+
+        int row = store.insert(id, 20_000, 0, "Lunch", food, 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> store.set(row, Integer.MIN_VALUE - 1L, 0, "Dinner", food, 2));
+        assertEquals(20_000, store.getEpochDay(row));
+        assertEquals("Lunch", store.getMealType(row));
+        assertEquals(1, store.rowsInOrder().length);
+    }
+
+    @Test
+    void symbolTableRejectsNewSymbolsOnceFull() {
+        SymbolTable table = new SymbolTable(true, 2);
+        assertEquals(0, table.intern("Lunch"));
+        assertEquals(1, table.intern("Dinner"));
+        assertThrows(IllegalStateException.class, () -> table.intern("Brunch"));
+        assertEquals(0, table.intern("LUNCH"));
+        assertEquals(2, table.size());
+    }
+
+    private static void assertSameContents(LogEntryStore store, Map<String, LogRow> expected,
+                                           Map<String, Food> expectedFoods) {
+        assertEquals(expected.size(), store.size());
+        for (LogRow row : expected.values()) {
+            int found = store.find(row.id);
+            assertTrue(found >= 0, row.id);
+            assertEquals(row.id, store.getId(found));
+            assertEquals(row.epochDay, store.getEpochDay(found));
+            assertEquals(row.nanoOfDay, store.getNanoOfDay(found));
+            assertEquals(row.mealType, store.getMealType(found));
+            assertEquals(row.servings, store.getServings(found));
+            assertTrue(store.getFood(found) == expectedFoods.get(row.id), row.id);
+        }
+
+        List<String> inOrder = new ArrayList<>();
+        for (int row : store.rowsInOrder()) {
+            inOrder.add(store.getId(row));
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), inOrder);
+    }
+
+    private static LogRow row(Random random, String id) {
+        // The last nanosecond of the day uses all 47 bits of the time column
+        long nanos = random.nextInt(10) == 0 ? 86_399_999_999_999L : random.nextInt(86_400) * 1_000_000_000L;
+        return new LogRow(id, 19_000 + random.nextInt(2000), nanos,
+                MEAL_TYPES[random.nextInt(MEAL_TYPES.length)], null, 0.5 * (1 + random.nextInt(8)));
+    }
+
+    private static List<Food> foods() {
+        List<Food> foods = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            foods.add(new BasicFood("Food " + i, List.of("test"), 100 + i));
+        }
+        return foods;
+    }
+}